@@ -0,0 +1,153 @@
+package bench;
+
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.http.HttpRequest;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * دسترسی بنچمارک‌ها به کلاس‌های ربات
+ * کلاس‌های ربات در پکیج پیش‌فرض هستند و از پکیج دیگری import نمی‌شوند (JMH هم بنچمارک در پکیج پیش‌فرض نمی‌پذیرد)؛
+ * پس متدها یک بار با MethodHandle پیدا می‌شوند. چون handle ها static final هستند، JIT آن‌ها را مثل فراخوانی مستقیم inline می‌کند.
+ */
+final class Bot {
+
+    private static final MethodHandle READ_USERS;
+    private static final MethodHandle STREAM_USERS;
+    private static final MethodHandle UPSERT_USER_ROW;
+    private static final MethodHandle NEW_USER;
+    private static final MethodHandle NEW_PHOTO;
+    private static final MethodHandle PHOTO_ORDER;
+    private static final MethodHandle NEW_MULTIPART;
+    private static final MethodHandle MULTIPART_FIELD;
+    private static final MethodHandle MULTIPART_FILE;
+    private static final MethodHandle MULTIPART_PUBLISHER;
+    private static final MethodHandle DECODE_UPDATES;
+    private static final MethodHandle NEW_LONG_SET;
+    private static final MethodHandle LONG_SET_ADD;
+    private static final MethodHandle LONG_SET_CONTAINS;
+    private static final MethodHandle LOGGER;
+
+    static {
+        try {
+            Class<?> excelReader = Class.forName("ExcelReader");
+            Class<?> user = Class.forName("User");
+            Class<?> photoCatalog = Class.forName("PhotoCatalog");
+            Class<?> photo = Class.forName("PhotoCatalog$Photo");
+            Class<?> multipart = Class.forName("TelegramClient$Multipart");
+            Class<?> updateDecoder = Class.forName("UpdateDecoder");
+            Class<?> longSet = Class.forName("ConcurrentLongSet");
+            Class<?> asyncLogging = Class.forName("AsyncLogging");
+
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            READ_USERS = lookup.findStatic(excelReader, "readUsersFromExcel", MethodType.methodType(List.class, String.class));
+            STREAM_USERS = lookup.findStatic(excelReader, "streamUsersFromExcel", MethodType.methodType(Stream.class, String.class));
+            UPSERT_USER_ROW = lookup.findStatic(excelReader, "upsertUserRow", MethodType.methodType(void.class, user, String.class))
+                    .asType(MethodType.methodType(void.class, Object.class, String.class));
+            NEW_USER = lookup.findConstructor(user, MethodType.methodType(void.class, String.class, String.class, String.class))
+                    .asType(MethodType.methodType(Object.class, String.class, String.class, String.class));
+
+            // اعضای package-private: lookup با دسترسی کامل به کلاس مقصد (همه در unnamed module هستند)
+            MethodHandles.Lookup photoLookup = MethodHandles.privateLookupIn(photoCatalog, lookup);
+            NEW_PHOTO = photoLookup.findConstructor(photo, MethodType.methodType(void.class,
+                            File.class, String.class, long.class, long.class))
+                    .asType(MethodType.methodType(Object.class, File.class, String.class, long.class, long.class));
+            PHOTO_ORDER = photoLookup.findStaticGetter(photoCatalog, "ORDER", Comparator.class);
+
+            MethodHandles.Lookup multipartLookup = MethodHandles.privateLookupIn(multipart, lookup);
+            NEW_MULTIPART = multipartLookup.findConstructor(multipart, MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(Object.class));
+            MULTIPART_FIELD = multipartLookup.findVirtual(multipart, "field", MethodType.methodType(multipart, String.class, String.class))
+                    .asType(MethodType.methodType(Object.class, Object.class, String.class, String.class));
+            MULTIPART_FILE = multipartLookup.findVirtual(multipart, "file", MethodType.methodType(multipart, String.class, File.class))
+                    .asType(MethodType.methodType(Object.class, Object.class, String.class, File.class));
+            MULTIPART_PUBLISHER = multipartLookup.findVirtual(multipart, "publisher", MethodType.methodType(HttpRequest.BodyPublisher.class))
+                    .asType(MethodType.methodType(HttpRequest.BodyPublisher.class, Object.class));
+
+            DECODE_UPDATES = lookup.findStatic(updateDecoder, "decodeResponse", MethodType.methodType(List.class, byte[].class));
+
+            NEW_LONG_SET = lookup.findConstructor(longSet, MethodType.methodType(void.class, int.class))
+                    .asType(MethodType.methodType(Object.class, int.class));
+            LONG_SET_ADD = lookup.findVirtual(longSet, "add", MethodType.methodType(boolean.class, long.class))
+                    .asType(MethodType.methodType(boolean.class, Object.class, long.class));
+            LONG_SET_CONTAINS = lookup.findVirtual(longSet, "contains", MethodType.methodType(boolean.class, long.class))
+                    .asType(MethodType.methodType(boolean.class, Object.class, long.class));
+
+            LOGGER = lookup.findStatic(asyncLogging, "logger", MethodType.methodType(Logger.class, String.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private Bot() {}
+
+    @SuppressWarnings("unchecked")
+    static List<Object> readUsersFromExcel(String filePath) throws Throwable {
+        return (List<Object>) READ_USERS.invokeExact(filePath);
+    }
+
+    @SuppressWarnings("unchecked")
+    static Stream<Object> streamUsersFromExcel(String filePath) throws Throwable {
+        return (Stream<Object>) STREAM_USERS.invokeExact(filePath);
+    }
+
+    static void upsertUserRow(Object user, String filePath) throws Throwable {
+        UPSERT_USER_ROW.invokeExact(user, filePath);
+    }
+
+    static Object newUser(String username, String gender, String lastname) throws Throwable {
+        return (Object) NEW_USER.invokeExact(username, gender, lastname);
+    }
+
+    static Object newPhoto(File file, String numericKey, long size, long lastModified) throws Throwable {
+        return (Object) NEW_PHOTO.invokeExact(file, numericKey, size, lastModified);
+    }
+
+    @SuppressWarnings("unchecked")
+    static Comparator<Object> photoOrder() throws Throwable {
+        return (Comparator<Object>) (Comparator<?>) PHOTO_ORDER.invokeExact();
+    }
+
+    /**
+     * UpdateDecoder.decodeResponse؛ عناصر لیست از نوع Update هستند
+     */
+    @SuppressWarnings("unchecked")
+    static List<Object> decodeUpdates(byte[] json) throws Throwable {
+        return (List<Object>) DECODE_UPDATES.invokeExact(json);
+    }
+
+    static Object newLongSet(int expectedSize) throws Throwable {
+        return (Object) NEW_LONG_SET.invokeExact(expectedSize);
+    }
+
+    static boolean longSetAdd(Object set, long value) throws Throwable {
+        return (boolean) LONG_SET_ADD.invokeExact(set, value);
+    }
+
+    static boolean longSetContains(Object set, long value) throws Throwable {
+        return (boolean) LONG_SET_CONTAINS.invokeExact(set, value);
+    }
+
+    /**
+     * AsyncLogging.logger
+     */
+    static Logger logger(String subsystem) throws Throwable {
+        return (Logger) LOGGER.invokeExact(subsystem);
+    }
+
+    /**
+     * ساخت بدنه multipart مثل TelegramClient.uploadPhoto
+     */
+    static HttpRequest.BodyPublisher photoMultipart(long chatId, File photo) throws Throwable {
+        Object multipart = (Object) NEW_MULTIPART.invokeExact();
+        multipart = (Object) MULTIPART_FIELD.invokeExact(multipart, "chat_id", Long.toString(chatId));
+        multipart = (Object) MULTIPART_FILE.invokeExact(multipart, "photo", photo);
+        return (HttpRequest.BodyPublisher) MULTIPART_PUBLISHER.invokeExact(multipart);
+    }
+}
@@ -0,0 +1,96 @@
+package bench;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * مقایسه نتیجه JMH (خروجی -rf json) با baseline ثبت‌شده در مخزن
+ * برای هر بنچمارک درصد تغییر چاپ می‌شود و اگر حداقل یکی بیش از حد مجاز کندتر شده باشد کد خروج 1 است.
+ * نتیجه‌ای که خطای اندازه‌گیری آن (scoreError، بازه اطمینان 99.9%) از درصد مجاز بیشتر است قابل مقایسه نیست
+ * و فقط با ⚠️ گزارش می‌شود، نه به عنوان کندی.
+ *
+ * java -cp benchmarks/target/benchmarks.jar bench.CompareBaseline benchmarks/baseline.json result.json [درصد مجاز، پیش‌فرض 20]
+ */
+public class CompareBaseline {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("استفاده: CompareBaseline <baseline.json> <result.json> [درصد مجاز]");
+            System.exit(2);
+        }
+        Map<String, JSONObject> baseline = load(Path.of(args[0]));
+        Map<String, JSONObject> current = load(Path.of(args[1]));
+        double tolerance = args.length > 2 ? Double.parseDouble(args[2]) : 20;
+
+        int regressions = 0;
+        for (Map.Entry<String, JSONObject> entry : current.entrySet()) {
+            JSONObject before = baseline.get(entry.getKey());
+            if (before == null) {
+                System.out.println("🆕 " + entry.getKey() + ": در baseline نیست");
+                continue;
+            }
+            double oldScore = score(before);
+            double newScore = score(entry.getValue());
+            double noise = Math.max(relativeError(before), relativeError(entry.getValue())) * 100;
+            if (noise > tolerance) {
+                System.out.printf("⚠️ %s: %.3f -> %.3f (خطای اندازه‌گیری ±%.0f%% بیشتر از حد مجاز است؛ مقایسه نشد)%n",
+                        entry.getKey(), oldScore, newScore, noise);
+                continue;
+            }
+            // در حالت throughput عدد بزرگ‌تر بهتر است و در بقیه حالت‌ها (زمان هر عملیات) عدد کوچک‌تر
+            boolean higherIsBetter = "thrpt".equals(entry.getValue().getString("mode"));
+            double slowdown = (higherIsBetter ? oldScore / newScore - 1 : newScore / oldScore - 1) * 100;
+            boolean regressed = slowdown > tolerance;
+            if (regressed) regressions++;
+
+            System.out.printf("%s %s: %.3f -> %.3f %s (%+.1f%%)%n", regressed ? "❌" : "✅", entry.getKey(),
+                    oldScore, newScore, entry.getValue().getJSONObject("primaryMetric").getString("scoreUnit"), slowdown);
+        }
+
+        if (regressions > 0) {
+            System.out.println(regressions + " بنچمارک بیش از " + tolerance + "% کندتر شده است.");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * نتایج به تفکیک نام بنچمارک و پارامترها
+     */
+    private static Map<String, JSONObject> load(Path file) throws IOException {
+        Map<String, JSONObject> results = new LinkedHashMap<>();
+        JSONArray array = new JSONArray(Files.readString(file));
+        for (int i = 0; i < array.length(); i++) {
+            JSONObject result = array.getJSONObject(i);
+            String name = result.getString("benchmark");
+            name = name.substring(name.lastIndexOf('.', name.lastIndexOf('.') - 1) + 1);
+
+            JSONObject params = result.optJSONObject("params");
+            if (params != null) {
+                Map<String, Object> sorted = new TreeMap<>(params.toMap());
+                name += sorted;
+            }
+            results.put(name, result);
+        }
+        return results;
+    }
+
+    private static double score(JSONObject result) {
+        return result.getJSONObject("primaryMetric").getDouble("score");
+    }
+
+    /**
+     * نسبت scoreError به score (0 وقتی JMH خطا را محاسبه نکرده، مثلاً با یک تکرار)
+     */
+    private static double relativeError(JSONObject result) {
+        JSONObject metric = result.getJSONObject("primaryMetric");
+        double error = metric.optDouble("scoreError", 0);
+        return Double.isNaN(error) ? 0 : error / metric.getDouble("score");
+    }
+}
@@ -0,0 +1,105 @@
+package bench;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * خواندن لیست کاربران و ثبت یک کاربر در فایل اکسل، برای لیست‌هایی از 100 تا 100 هزار سطر
+ * upsert یک username موجود (وسط لیست) را ثبت می‌کند؛ یعنی هزینه کامل خواندن، جستجو و نوشتن دوباره فایل.
+ * پایگاه داده کاربران (که upsert آن را هم به‌روز می‌کند) در همان پوشه موقت ساخته می‌شود، نه users.db/ پوشه جاری.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 3, jvmArgsAppend = "-Xmx2g")
+public class ExcelBenchmark {
+
+    @Param({"100", "1000", "10000", "100000"})
+    public int rows;
+
+    private Path dir;
+    private String roster;
+    private Object existingUser;
+
+    @Setup
+    public void createRoster() throws Throwable {
+        dir = Files.createTempDirectory("excel-bench");
+        // قبل از اولین استفاده از UserDatabase.shared() در این fork
+        System.setProperty("bot.users.dir", dir.resolve("users.db").toString());
+        roster = dir.resolve("users.xlsx").toString();
+        writeRoster(Path.of(roster), rows);
+        existingUser = Bot.newUser("user" + rows / 2, "Mr.", "Lastname" + rows / 2);
+    }
+
+    @TearDown
+    public void deleteRoster() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public List<Object> readUsersFromExcel() throws Throwable {
+        return Bot.readUsersFromExcel(roster);
+    }
+
+    @Benchmark
+    public long streamUsersFromExcel() throws Throwable {
+        try (Stream<Object> users = Bot.streamUsersFromExcel(roster)) {
+            return users.count();
+        }
+    }
+
+    @Benchmark
+    public void upsertUserRow() throws Throwable {
+        Bot.upsertUserRow(existingUser, roster);
+    }
+
+    /**
+     * ساخت فایل نمونه با ستون‌های username, gender, lastname
+     */
+    static void writeRoster(Path path, int rows) throws IOException {
+        try (SXSSFWorkbook workbook = new SXSSFWorkbook(100);
+             OutputStream out = Files.newOutputStream(path)) {
+            Sheet sheet = workbook.createSheet("Users");
+            Row header = sheet.createRow(0);
+            header.createCell(0).setCellValue("username");
+            header.createCell(1).setCellValue("gender");
+            header.createCell(2).setCellValue("lastname");
+            for (int i = 0; i < rows; i++) {
+                Row row = sheet.createRow(i + 1);
+                row.createCell(0).setCellValue("user" + i);
+                row.createCell(1).setCellValue(i % 2 == 0 ? "Mr." : "Ms.");
+                row.createCell(2).setCellValue("Lastname" + i);
+            }
+            workbook.write(out);
+            workbook.dispose();
+        }
+    }
+}
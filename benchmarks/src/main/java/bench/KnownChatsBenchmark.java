@@ -0,0 +1,81 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * بررسی عضویت chat_id در مجموعه چت‌های شناخته‌شده (مسیر polling؛ اکثر آپدیت‌ها از چت‌های قبلی هستند)
+ * containsBoxedSet روش قبلی Main.knownChatIds است (ConcurrentHashMap.newKeySet با Long) و containsLongSet روش فعلی (ConcurrentLongSet)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(3)
+public class KnownChatsBenchmark {
+
+    private static final int LOOKUPS = 1024;
+
+    @Param({"10000", "1000000"})
+    public int chats;
+
+    private Object longSet;
+    private Set<Long> boxedSet;
+    private long[] lookups;
+
+    @Setup
+    public void fill() throws Throwable {
+        SplittableRandom random = new SplittableRandom(42);
+        long[] ids = new long[chats];
+        longSet = Bot.newLongSet(16);
+        boxedSet = ConcurrentHashMap.newKeySet();
+        for (int i = 0; i < chats; i++) {
+            // chat_id های واقعی کاربران حدود 10 رقمی هستند
+            ids[i] = 1_000_000_000L + random.nextLong(9_000_000_000L);
+            Bot.longSetAdd(longSet, ids[i]);
+            boxedSet.add(ids[i]);
+        }
+
+        // 90 درصد چت‌های موجود، 10 درصد چت جدید
+        lookups = new long[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            lookups[i] = random.nextInt(10) == 0 ? -1 - i : ids[random.nextInt(chats)];
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public int containsLongSet() throws Throwable {
+        int found = 0;
+        for (long id : lookups) {
+            if (Bot.longSetContains(longSet, id)) found++;
+        }
+        return found;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public int containsBoxedSet() {
+        int found = 0;
+        for (long id : lookups) {
+            if (boxedSet.contains(id)) found++;
+        }
+        return found;
+    }
+}
@@ -0,0 +1,66 @@
+package bench;
+
+import org.apache.logging.log4j.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * هزینه یک خط لاگ برای thread ارسال (مثل "ارسال x.jpg به chat با کد پاسخ: 200")
+ * printlnConcat روش قبلی است (ساختن رشته و System.out.println با قفل مشترک)، asyncInfo لاگ فعال AsyncLogging
+ * و asyncDebugDisabled لاگ غیرفعال (سطح پیش‌فرض INFO). خروجی کنسول در این بنچمارک دور ریخته می‌شود؛
+ * در asyncInfo اگر thread نویسنده عقب بماند، پیام‌ها حذف می‌شوند و فراخواننده صبر نمی‌کند.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(3)
+public class LoggingBenchmark {
+
+    private PrintStream console;
+    private Logger log;
+    private final String photo = "photo_0001.jpg";
+    private final Long chatId = 1_234_567_890L;
+    private final Integer code = 200;
+
+    @Setup
+    public void setUp() throws Throwable {
+        console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream(), true));
+        log = Bot.logger("bench");
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.setOut(console);
+    }
+
+    @Benchmark
+    public void printlnConcat() {
+        System.out.println("ارسال " + photo + " به " + chatId + " با کد پاسخ: " + code);
+    }
+
+    @Benchmark
+    public void asyncInfo() {
+        log.info("ارسال {} به {} با کد پاسخ: {}", photo, chatId, code);
+    }
+
+    @Benchmark
+    public void asyncDebugDisabled() {
+        log.debug("ارسال {} به {} با کد پاسخ: {}", photo, chatId, code);
+    }
+}
@@ -0,0 +1,96 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.http.HttpRequest;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ساخت بدنه multipart برای sendPhoto و خواندن کامل آن (همان کاری که HttpClient هنگام ارسال انجام می‌دهد)
+ * زمان شامل تشخیص نوع فایل، ساخت بخش‌ها و خواندن عکس از دیسک است (فایل پس از اولین بار در page cache است).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(3)
+public class MultipartBenchmark {
+
+    @Param({"65536", "1048576"})
+    public int photoBytes;
+
+    private File photo;
+
+    @Setup
+    public void createPhoto() throws IOException {
+        byte[] content = new byte[photoBytes];
+        new Random(42).nextBytes(content);
+        // سرآیند JPEG تا تشخیص نوع فایل مثل عکس واقعی عمل کند
+        content[0] = (byte) 0xFF;
+        content[1] = (byte) 0xD8;
+        content[2] = (byte) 0xFF;
+        photo = File.createTempFile("multipart-bench", ".jpg");
+        Files.write(photo.toPath(), content);
+    }
+
+    @TearDown
+    public void deletePhoto() {
+        photo.delete();
+    }
+
+    @Benchmark
+    public long encodeSendPhoto() throws Throwable {
+        HttpRequest.BodyPublisher body = Bot.photoMultipart(123456789L, photo);
+        return drain(body);
+    }
+
+    /**
+     * خواندن همه بایت‌های بدنه و برگرداندن تعداد آن‌ها
+     */
+    private static long drain(HttpRequest.BodyPublisher body) {
+        CompletableFuture<Long> done = new CompletableFuture<>();
+        body.subscribe(new Flow.Subscriber<>() {
+            private long bytes;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(ByteBuffer item) {
+                bytes += item.remaining();
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                done.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                done.complete(bytes);
+            }
+        });
+        return done.join();
+    }
+}
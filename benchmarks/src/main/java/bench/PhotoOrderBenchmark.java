@@ -0,0 +1,61 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * مرتب‌سازی عکس‌ها بر اساس عدد داخل نام فایل (PhotoCatalog.ORDER)
+ * عکس‌ها با نام‌هایی مثل 1.jpg تا N.jpg (با چند نام صفردار و غیرعددی) و به ترتیب تصادفی ساخته می‌شوند.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(3)
+public class PhotoOrderBenchmark {
+
+    @Param({"100", "10000"})
+    public int photos;
+
+    private Object[] shuffled;
+    private Comparator<Object> order;
+
+    @Setup
+    public void createPhotos() throws Throwable {
+        order = Bot.photoOrder();
+        List<Object> list = new ArrayList<>(photos);
+        for (int i = 1; i <= photos; i++) {
+            String name = (i % 50 == 0 ? "00" + i : Integer.toString(i)) + (i % 97 == 0 ? "b" : "") + ".jpg";
+            String key = Integer.toString(i);
+            list.add(Bot.newPhoto(new File("fol", name), key, 100_000, 0));
+        }
+        Collections.shuffle(list, new Random(42));
+        shuffled = list.toArray();
+    }
+
+    @Benchmark
+    public Object[] sort() {
+        Object[] copy = shuffled.clone();
+        Arrays.sort(copy, order);
+        return copy;
+    }
+}
@@ -0,0 +1,92 @@
+package bench;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * تبدیل پاسخ getUpdates به آپدیت‌ها (update_id، chat و متن پیام)
+ * decodeWithJsonObject روش قبلی Main.startPolling است (ساخت درخت کامل org.json) و decodeStreaming روش فعلی (UpdateDecoder)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(3)
+public class UpdatesDecodeBenchmark {
+
+    @Param({"1", "100"})
+    public int updates;
+
+    private String payload;
+    private byte[] payloadBytes;
+
+    @Setup
+    public void createPayload() {
+        payload = payload(updates);
+        payloadBytes = payload.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public List<Object> decodeStreaming() throws Throwable {
+        return Bot.decodeUpdates(payloadBytes);
+    }
+
+    @Benchmark
+    public long decodeWithJsonObject(Blackhole blackhole) {
+        JSONObject json = new JSONObject(payload);
+        JSONArray results = json.getJSONArray("result");
+        long lastUpdateId = 0;
+        for (int i = 0; i < results.length(); i++) {
+            JSONObject update = results.getJSONObject(i);
+            if (update.has("message")) {
+                JSONObject msg = update.getJSONObject("message");
+                JSONObject chat = msg.getJSONObject("chat");
+                blackhole.consume(chat.getLong("id"));
+                blackhole.consume(chat.optString("username", null));
+                blackhole.consume(chat.optString("first_name", null));
+                if (msg.has("text")) {
+                    blackhole.consume(msg.getString("text"));
+                }
+            }
+            lastUpdateId = update.getLong("update_id");
+        }
+        return lastUpdateId;
+    }
+
+    /**
+     * پاسخ نمونه getUpdates با شکل واقعی پیام‌های تلگرام
+     */
+    static String payload(int updates) {
+        StringBuilder out = new StringBuilder("{\"ok\":true,\"result\":[");
+        for (int i = 0; i < updates; i++) {
+            long chatId = 100_000_000L + i;
+            if (i > 0) out.append(',');
+            out.append("{\"update_id\":").append(700_000_000L + i)
+                    .append(",\"message\":{\"message_id\":").append(i + 1)
+                    .append(",\"from\":{\"id\":").append(chatId).append(",\"is_bot\":false,\"first_name\":\"Ali\",\"last_name\":\"Ahmadi\",\"username\":\"user")
+                    .append(i).append("\",\"language_code\":\"fa\"}")
+                    .append(",\"chat\":{\"id\":").append(chatId).append(",\"first_name\":\"Ali\",\"last_name\":\"Ahmadi\",\"username\":\"user")
+                    .append(i).append("\",\"type\":\"private\"}")
+                    .append(",\"date\":1700000000,\"text\":\"").append(i % 3 == 0 ? "/start" : i % 3 == 1 ? "/status" : "سلام، عکس‌ها کی می‌رسند؟")
+                    .append("\"}}");
+        }
+        return out.append("]}").toString();
+    }
+}
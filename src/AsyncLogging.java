@@ -0,0 +1,453 @@
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.Marker;
+import org.apache.logging.log4j.message.Message;
+import org.apache.logging.log4j.message.MessageFactory;
+import org.apache.logging.log4j.message.ReusableMessage;
+import org.apache.logging.log4j.spi.AbstractLogger;
+import org.apache.logging.log4j.spi.ExtendedLogger;
+import org.apache.logging.log4j.spi.LoggerContext;
+import org.apache.logging.log4j.spi.LoggerContextFactory;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.URI;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * لاگ ناهمگام روی log4j-api (بدون log4j-core)
+ * هر فراخوانی لاگ فقط یک خانه از یک حلقه (ring buffer) از پیش ساخته‌شده را پر می‌کند: سطح، نام، الگوی پیام و پارامترها.
+ * ساختن متن پیام ("{}" ها)، زمان و چاپ در کنسول روی یک thread جداگانه (log-writer) و به صورت دسته‌ای انجام می‌شود؛
+ * پس thread های ارسال منتظر قفل System.out و I/O کنسول نمی‌مانند.
+ * پارامترهای تغییرناپذیر (String، اعداد، Boolean، Character، enum) همان‌طور صف می‌شوند؛ بقیه (StringBuilder، مجموعه‌ها،
+ * User و ...) همان لحظه روی thread فراخواننده به متن تبدیل می‌شوند تا وضعیت زمان لاگ چاپ شود نه زمان چاپ.
+ * مثل log4j، \{} در الگو یک "{}" ساده چاپ می‌کند و پارامتری مصرف نمی‌کند.
+ * اگر سطح لاگ غیرفعال باشد، پیام نه ساخته و نه صف می‌شود.
+ * اگر حلقه پر باشد، پیام‌های INFO و پایین‌تر حذف و تعدادشان گزارش می‌شود (فراخواننده صبر نمی‌کند)؛ WARN و ERROR تا آزاد شدن جا صبر می‌کنند.
+ *
+ * سطح هر بخش (نام logger) جداگانه تنظیم می‌شود:
+ * -Dbot.log.level=INFO (پیش‌فرض همه)، -Dbot.log.level.send=DEBUG، -Dbot.log.level.org.apache.poi=ERROR (نزدیک‌ترین پیشوند نقطه‌دار)
+ * اندازه حلقه با -Dbot.log.bufferSize (پیش‌فرض 8192، توان 2).
+ *
+ * همین کلاس LoggerContextFactory مربوط به LogManager هم هست تا لاگ‌های کتابخانه‌ها (مثل POI) هم از همین مسیر بروند.
+ */
+public class AsyncLogging implements LoggerContextFactory {
+
+    static {
+        // باید قبل از اولین استفاده از LogManager تنظیم شود (کلاس‌های ربات لاگر را مستقیم از این کلاس می‌گیرند)
+        if (System.getProperty("log4j2.loggerContextFactory") == null) {
+            System.setProperty("log4j2.loggerContextFactory", AsyncLogging.class.getName());
+        }
+    }
+
+    private static final int MAX_PARAMS = 10;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long WAIT_FULL_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+    private static final Level ROOT_LEVEL = Level.toLevel(System.getProperty("bot.log.level"), Level.INFO);
+    private static final Context CONTEXT = new Context();
+    private static final Ring RING = new Ring(Integer.getInteger("bot.log.bufferSize", 8192));
+
+    /**
+     * لاگر یک بخش از ربات (مثلاً "send" یا "polling")
+     * پارامترهای تغییرپذیر پیام‌ها هنگام فراخوانی به متن تبدیل می‌شوند (نه روی thread نویسنده)
+     */
+    public static Logger logger(String subsystem) {
+        return CONTEXT.getLogger(subsystem);
+    }
+
+    /**
+     * صبر تا چاپ همه لاگ‌های صف‌شده (حداکثر 2 ثانیه)؛ مثلاً هنگام خروج یا قبل از چاپ مستقیم گزارش در کنسول
+     */
+    public static void flush() {
+        RING.flush(TimeUnit.SECONDS.toNanos(2));
+    }
+
+    /**
+     * سطح یک logger: نزدیک‌ترین bot.log.level.<پیشوند نام> یا bot.log.level
+     */
+    private static Level levelFor(String name) {
+        for (String prefix = name; !prefix.isEmpty(); prefix = prefix.substring(0, Math.max(0, prefix.lastIndexOf('.')))) {
+            String value = System.getProperty("bot.log.level." + prefix);
+            if (value != null) {
+                return Level.toLevel(value, ROOT_LEVEL);
+            }
+        }
+        return ROOT_LEVEL;
+    }
+
+    // --- LoggerContextFactory (برای LogManager) ---
+
+    @Override
+    public LoggerContext getContext(String fqcn, ClassLoader loader, Object externalContext, boolean currentContext) {
+        return CONTEXT;
+    }
+
+    @Override
+    public LoggerContext getContext(String fqcn, ClassLoader loader, Object externalContext, boolean currentContext,
+                                    URI configLocation, String name) {
+        return CONTEXT;
+    }
+
+    @Override
+    public void removeContext(LoggerContext context) {
+        // فقط یک context مشترک وجود دارد
+    }
+
+    /**
+     * همه لاگرها؛ سطح هر لاگر یک بار هنگام ساخت از System property ها خوانده می‌شود
+     */
+    private static final class Context implements LoggerContext {
+        private final Map<String, RingLogger> loggers = new ConcurrentHashMap<>();
+
+        @Override
+        public Object getExternalContext() {
+            return null;
+        }
+
+        @Override
+        public ExtendedLogger getLogger(String name) {
+            return loggers.computeIfAbsent(name, n -> new RingLogger(n, levelFor(n)));
+        }
+
+        @Override
+        public ExtendedLogger getLogger(String name, MessageFactory messageFactory) {
+            // قالب پیام‌ها همیشه با "{}" است؛ MessageFactory های دیگر پشتیبانی نمی‌شوند
+            return getLogger(name);
+        }
+
+        @Override
+        public boolean hasLogger(String name) {
+            return loggers.containsKey(name);
+        }
+
+        @Override
+        public boolean hasLogger(String name, MessageFactory messageFactory) {
+            return hasLogger(name);
+        }
+
+        @Override
+        public boolean hasLogger(String name, Class<? extends MessageFactory> messageFactoryClass) {
+            return hasLogger(name);
+        }
+    }
+
+    /**
+     * لاگری که پیام‌ها را در حلقه صف می‌کند
+     * AbstractLogger قبل از ساختن پیام isEnabled را بررسی می‌کند و پیام پارامتردار را از یک نمونه قابل استفاده مجدد می‌سازد
+     */
+    private static final class RingLogger extends AbstractLogger {
+        private static final long serialVersionUID = 1L;
+
+        private final Level level;
+
+        RingLogger(String name, Level level) {
+            super(name);
+            this.level = level;
+        }
+
+        private boolean enabled(Level test) {
+            return level.intLevel() >= test.intLevel();
+        }
+
+        @Override
+        public Level getLevel() {
+            return level;
+        }
+
+        @Override
+        public void logMessage(String fqcn, Level level, Marker marker, Message message, Throwable t) {
+            RING.publish(name, level, message, t);
+        }
+
+        @Override
+        public boolean isEnabled(Level level, Marker marker, Message message, Throwable t) {
+            return enabled(level);
+        }
+
+        @Override
+        public boolean isEnabled(Level level, Marker marker, CharSequence message, Throwable t) {
+            return enabled(level);
+        }
+
+        @Override
+        public boolean isEnabled(Level level, Marker marker, Object message, Throwable t) {
+            return enabled(level);
+        }
+
+        @Override
+        public boolean isEnabled(Level level, Marker marker, String message, Throwable t) {
+            return enabled(level);
+        }
+
+        @Override
+        public boolean isEnabled(Level level, Marker marker, String message) {
+            return enabled(level);
+        }
+
+        @Override
+        public boolean isEnabled(Level level, Marker marker, String message, Object... params) {
+            return enabled(level);
+        }
+
+        @Override
+        public boolean isEnabled(Level level, Marker marker, String message, Object p0) {
+            return enabled(level);
+        }
+
+        @Override
+        public boolean isEnabled(Level level, Marker marker, String message, Object p0, Object p1) {
+            return enabled(level);
+        }
+
+        @Override
+        public boolean isEnabled(Level level, Marker marker, String message, Object p0, Object p1, Object p2) {
+            return enabled(level);
+        }
+
+        @Override
+        public boolean isEnabled(Level level, Marker marker, String message, Object p0, Object p1, Object p2, Object p3) {
+            return enabled(level);
+        }
+
+        @Override
+        public boolean isEnabled(Level level, Marker marker, String message, Object p0, Object p1, Object p2, Object p3,
+                                 Object p4) {
+            return enabled(level);
+        }
+
+        @Override
+        public boolean isEnabled(Level level, Marker marker, String message, Object p0, Object p1, Object p2, Object p3,
+                                 Object p4, Object p5) {
+            return enabled(level);
+        }
+
+        @Override
+        public boolean isEnabled(Level level, Marker marker, String message, Object p0, Object p1, Object p2, Object p3,
+                                 Object p4, Object p5, Object p6) {
+            return enabled(level);
+        }
+
+        @Override
+        public boolean isEnabled(Level level, Marker marker, String message, Object p0, Object p1, Object p2, Object p3,
+                                 Object p4, Object p5, Object p6, Object p7) {
+            return enabled(level);
+        }
+
+        @Override
+        public boolean isEnabled(Level level, Marker marker, String message, Object p0, Object p1, Object p2, Object p3,
+                                 Object p4, Object p5, Object p6, Object p7, Object p8) {
+            return enabled(level);
+        }
+
+        @Override
+        public boolean isEnabled(Level level, Marker marker, String message, Object p0, Object p1, Object p2, Object p3,
+                                 Object p4, Object p5, Object p6, Object p7, Object p8, Object p9) {
+            return enabled(level);
+        }
+    }
+
+    /**
+     * یک خانه حلقه؛ فقط تولیدکننده‌ای که خانه را گرفته یا thread نویسنده (بعد از انتشار) به آن دست می‌زند
+     */
+    private static final class Slot {
+        long timeMillis;
+        Level level;
+        String logger;
+        String format;
+        Object[] params = new Object[MAX_PARAMS];
+        int paramCount;
+        Throwable thrown;
+    }
+
+    /**
+     * حلقه با اندازه ثابت برای چند تولیدکننده و یک مصرف‌کننده
+     * هر خانه یک شماره توالی دارد: برابر pos یعنی آزاد برای نوشتن، pos+1 یعنی آماده خواندن
+     */
+    private static final class Ring {
+        private final Slot[] slots;
+        private final AtomicLongArray sequences;
+        private final int mask;
+        private final AtomicLong tail = new AtomicLong();
+        private final LongAdder dropped = new LongAdder();
+        private final Thread writer;
+
+        // فقط thread نویسنده می‌نویسد
+        private volatile long head;
+        // نویسنده منتظر پیام جدید است؛ فقط اولین تولیدکننده آن را بیدار می‌کند
+        private final AtomicBoolean idle = new AtomicBoolean();
+
+        Ring(int requestedSize) {
+            int size = Integer.highestOneBit(Math.max(64, requestedSize) - 1) << 1;
+            this.slots = new Slot[size];
+            this.sequences = new AtomicLongArray(size);
+            this.mask = size - 1;
+            for (int i = 0; i < size; i++) {
+                slots[i] = new Slot();
+                sequences.set(i, i);
+            }
+            this.writer = Thread.ofPlatform().name("log-writer").daemon().start(this::drainLoop);
+            Runtime.getRuntime().addShutdownHook(new Thread(AsyncLogging::flush, "log-flush"));
+        }
+
+        void publish(String logger, Level level, Message message, Throwable thrown) {
+            long pos;
+            while (true) {
+                pos = tail.get();
+                long sequence = sequences.get((int) pos & mask);
+                if (sequence == pos) {
+                    if (tail.compareAndSet(pos, pos + 1)) break;
+                } else if (sequence < pos) {
+                    // حلقه پر است؛ پیام‌های عادی حذف می‌شوند و فراخواننده منتظر کنسول نمی‌ماند،
+                    // ولی هشدارها و خطاها تا آزاد شدن یک خانه صبر می‌کنند
+                    if (!level.isMoreSpecificThan(Level.WARN) || !writer.isAlive()) {
+                        dropped.increment();
+                        return;
+                    }
+                    LockSupport.parkNanos(WAIT_FULL_NANOS);
+                }
+            }
+
+            Slot slot = slots[(int) pos & mask];
+            slot.timeMillis = System.currentTimeMillis();
+            slot.level = level;
+            slot.logger = logger;
+            slot.thrown = thrown;
+            if (message instanceof ReusableMessage reusable) {
+                // بدون کپی و بدون ساختن متن: آرایه پارامترهای پیام با آرایه خالی این خانه عوض می‌شود
+                slot.format = reusable.getFormat();
+                slot.paramCount = reusable.getParameterCount();
+                slot.params = reusable.swapParameters(slot.params);
+                for (int i = 0; i < Math.min(slot.paramCount, slot.params.length); i++) {
+                    if (!isImmutable(slot.params[i])) {
+                        slot.params[i] = String.valueOf(slot.params[i]);
+                    }
+                }
+            } else {
+                slot.format = message.getFormattedMessage();
+                slot.paramCount = 0;
+            }
+            sequences.set((int) pos & mask, pos + 1);
+
+            if (idle.get() && idle.compareAndSet(true, false)) {
+                LockSupport.unpark(writer);
+            }
+        }
+
+        /**
+         * پارامترهایی که می‌توان بدون کپی به thread نویسنده سپرد (null هم "null" چاپ می‌شود)
+         */
+        private static boolean isImmutable(Object param) {
+            return param == null || param instanceof String || param instanceof Integer || param instanceof Long
+                    || param instanceof Double || param instanceof Float || param instanceof Short || param instanceof Byte
+                    || param instanceof Boolean || param instanceof Character || param instanceof Enum<?>;
+        }
+
+        void flush(long timeoutNanos) {
+            long target = tail.get();
+            long deadline = System.nanoTime() + timeoutNanos;
+            LockSupport.unpark(writer);
+            while (head < target && System.nanoTime() < deadline && writer.isAlive()) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            }
+        }
+
+        private void drainLoop() {
+            StringBuilder out = new StringBuilder(16 * 1024);
+            long next = 0;
+            while (true) {
+                int drained = 0;
+                Slot slot;
+                while (sequences.get((int) next & mask) == next + 1) {
+                    slot = slots[(int) next & mask];
+                    format(slot, out);
+                    slot.thrown = null;
+                    Arrays.fill(slot.params, 0, Math.min(slot.paramCount, slot.params.length), null);
+                    // خانه برای دور بعدی حلقه آزاد می‌شود
+                    sequences.set((int) next & mask, next + slots.length);
+                    next++;
+                    if (++drained == 256) break;
+                }
+
+                long lost = dropped.sumThenReset();
+                if (lost > 0) {
+                    out.append("⚠️ ").append(lost).append(" پیام لاگ به دلیل پر بودن بافر حذف شد.\n");
+                }
+                if (out.length() > 0) {
+                    System.out.print(out);
+                    System.out.flush();
+                    out.setLength(0);
+                }
+                head = next;
+
+                if (drained == 0) {
+                    idle.set(true);
+                    if (sequences.get((int) next & mask) != next + 1) {
+                        LockSupport.parkNanos(IDLE_PARK_NANOS);
+                    }
+                    idle.set(false);
+                }
+            }
+        }
+
+        /**
+         * قالب هر خط: زمان سطح [بخش] پیام
+         */
+        private static void format(Slot slot, StringBuilder out) {
+            TIME.formatTo(Instant.ofEpochMilli(slot.timeMillis), out);
+            out.append(' ').append(slot.level.name());
+            for (int i = slot.level.name().length(); i < 5; i++) {
+                out.append(' ');
+            }
+            out.append(" [").append(slot.logger).append("] ");
+
+            String format = slot.format == null ? "null" : slot.format;
+            int param = 0;
+            // تعداد \ های پشت سر هم قبل از کاراکتر فعلی (قواعد ParameterFormatter در log4j)
+            int escapes = 0;
+            for (int i = 0; i < format.length(); i++) {
+                char c = format.charAt(i);
+                if (c == '\\') {
+                    escapes++;
+                    continue;
+                }
+                if (c == '{' && i + 1 < format.length() && format.charAt(i + 1) == '}') {
+                    // جفت \ ها یک \ چاپ می‌شوند؛ \ فرد باقی‌مانده {} را از placeholder بودن خارج می‌کند
+                    out.repeat('\\', escapes / 2);
+                    if (escapes % 2 == 1) {
+                        out.append("{}");
+                    } else if (param < slot.paramCount) {
+                        out.append(slot.params[param++]);
+                    } else {
+                        out.append("{}");
+                    }
+                    i++;
+                } else {
+                    out.repeat('\\', escapes);
+                    out.append(c);
+                }
+                escapes = 0;
+            }
+            out.repeat('\\', escapes);
+            out.append('\n');
+
+            if (slot.thrown != null) {
+                StringWriter trace = new StringWriter();
+                slot.thrown.printStackTrace(new PrintWriter(trace));
+                out.append(trace);
+            }
+        }
+    }
+}
@@ -0,0 +1,235 @@
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * وضعیت ماندگار ربات: آخرین update_id پردازش‌شده (offset) و فهرست چت‌های شناخته‌شده
+ * با این وضعیت، ربات بعد از راه‌اندازی مجدد بدون خواندن دوباره آپدیت‌های قدیمی از همان جا ادامه می‌دهد
+ * و چت‌هایی که قدیمی‌تر از نگهداری 24 ساعته تلگرام هستند فراموش نمی‌شوند.
+ *
+ * دو فایل در پوشه وضعیت:
+ * offset.bin: دو خانه 20 بایتی (شماره نسخه، offset، CRC32) که به نوبت بازنویسی می‌شوند؛
+ * اگر نوشتن یک خانه نیمه‌کاره بماند، خانه دیگر هنوز معتبر است (بدون فایل موقت و rename)
+ * chats.bin: هر چت جدید یک رکورد 12 بایتی (chat_id، CRC32) در انتهای فایل؛ رکورد نیمه‌کاره انتهایی هنگام بارگذاری حذف می‌شود
+ * chats.snapshot: همه چت‌ها با فرمت فشرده ConcurrentLongSet؛ وقتی chats.bin بزرگ شد، snapshot جدید نوشته و chats.bin خالی می‌شود
+ *
+ * هر commit ابتدا چت‌های جدید و سپس offset را می‌نویسد و هر دو را با force (fsync) روی دیسک ثبت می‌کند.
+ *
+ * تحویل دستورات حداکثر یک بار است: تلگرام با هر getUpdates با offset بزرگ‌تر (و در webhook با پاسخ 200) همه آپدیت‌های
+ * قبلی را تأیید‌شده می‌داند، چه دستورشان اجرا شده باشد چه هنوز در صف UpdateDispatcher باشد.
+ * پس دستوری که هنگام توقف ناگهانی در صف مانده یا وسط اجرا بود دوباره دریافت نمی‌شود و از دست می‌رود.
+ */
+public class BotState {
+
+    private static final Logger LOG = AsyncLogging.logger("state");
+
+    private static final int SLOT_SIZE = 20;
+    private static final int SLOT_STRIDE = 32;
+    private static final int CHAT_RECORD_SIZE = 12;
+    private static final int MIN_COMPACT_LOG_RECORDS = 10_000;
+
+    private final Path snapshotPath;
+    private final FileChannel offsetFile;
+    private final FileChannel chatsFile;
+
+    // چت‌های شناخته‌شده (خواندن بدون قفل)
+    private final ConcurrentLongSet chats;
+
+    // با قفل this
+    private final List<Long> pendingChats = new ArrayList<>();
+    private long logRecords;
+    private long offset;
+    private long version;
+    private long committedOffset;
+
+    /**
+     * @param directory پوشه فایل‌های وضعیت
+     */
+    public BotState(String directory) throws IOException {
+        Path dir = Path.of(directory);
+        Files.createDirectories(dir);
+
+        long start = System.nanoTime();
+        snapshotPath = dir.resolve("chats.snapshot");
+        offsetFile = FileChannel.open(dir.resolve("offset.bin"), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        chatsFile = FileChannel.open(dir.resolve("chats.bin"), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        loadOffset();
+        chats = loadSnapshot();
+        loadChats();
+        committedOffset = offset;
+        LOG.info("💾 وضعیت ربات بارگذاری شد: offset {}، {} چت ({} میلی‌ثانیه).",
+                offset, chats.size(), (System.nanoTime() - start) / 1_000_000);
+
+        if (logRecords >= Math.max(MIN_COMPACT_LOG_RECORDS, chats.size())) {
+            compactChats();
+        }
+    }
+
+    /**
+     * آخرین update_id ثبت‌شده (0 یعنی هنوز هیچ آپدیتی پردازش نشده است)
+     */
+    public synchronized long lastUpdateId() {
+        return offset;
+    }
+
+    /**
+     * مجموعه چت‌های شناخته‌شده (شامل چت‌هایی که هنوز commit نشده‌اند)
+     */
+    public ConcurrentLongSet chats() {
+        return chats;
+    }
+
+    /**
+     * اضافه کردن یک چت (اگر جدید باشد در commit بعدی روی دیسک نوشته می‌شود)
+     * برای چت‌های تکراری بدون قفل و بدون ساختن شیء برمی‌گردد
+     * @return true اگر چت جدید بود
+     */
+    public boolean addChat(long chatId) {
+        if (chats.contains(chatId)) return false;
+        synchronized (this) {
+            if (!chats.add(chatId)) return false;
+            pendingChats.add(chatId);
+            return true;
+        }
+    }
+
+    /**
+     * ثبت offset و چت‌های جدید روی دیسک
+     * @param lastUpdateId آخرین update_id دریافت‌شده (همان offset ای که تلگرام در getUpdates بعدی تأیید‌شده می‌داند)
+     */
+    public synchronized void commit(long lastUpdateId) throws IOException {
+        if (!pendingChats.isEmpty()) {
+            ByteBuffer records = ByteBuffer.allocate(pendingChats.size() * CHAT_RECORD_SIZE);
+            for (long chatId : pendingChats) {
+                records.putLong(chatId).putInt(crc(chatId));
+            }
+            records.flip();
+            long position = chatsFile.size();
+            while (records.hasRemaining()) {
+                position += chatsFile.write(records, position);
+            }
+            chatsFile.force(false);
+            logRecords += pendingChats.size();
+            pendingChats.clear();
+
+            if (logRecords >= Math.max(MIN_COMPACT_LOG_RECORDS, chats.size())) {
+                compactChats();
+            }
+        }
+
+        if (lastUpdateId > committedOffset) {
+            version++;
+            ByteBuffer slot = ByteBuffer.allocate(SLOT_SIZE).putLong(version).putLong(lastUpdateId).putInt(crc(version, lastUpdateId));
+            slot.flip();
+            long position = (version % 2) * SLOT_STRIDE;
+            while (slot.hasRemaining()) {
+                position += offsetFile.write(slot, position);
+            }
+            offsetFile.force(false);
+            offset = committedOffset = lastUpdateId;
+        }
+    }
+
+    /**
+     * نوشتن snapshot جدید از همه چت‌ها و خالی کردن chats.bin
+     * اگر برنامه بین این دو مرحله متوقف شود، چت‌های chats.bin دوباره (بدون اثر) به مجموعه اضافه می‌شوند
+     */
+    private void compactChats() throws IOException {
+        long start = System.nanoTime();
+        Path tmp = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024);
+            chats.writeTo(out);
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(tmp, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        chatsFile.truncate(0);
+        chatsFile.force(true);
+        logRecords = 0;
+        LOG.info("💾 snapshot چت‌ها ساخته شد: {} چت، {} بایت ({} میلی‌ثانیه).",
+                chats.size(), Files.size(snapshotPath), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    public synchronized void close() throws IOException {
+        offsetFile.close();
+        chatsFile.close();
+    }
+
+    private void loadOffset() throws IOException {
+        ByteBuffer slots = ByteBuffer.allocate(SLOT_STRIDE + SLOT_SIZE);
+        while (slots.hasRemaining() && offsetFile.read(slots, slots.position()) > 0) {
+            // ادامه تا پر شدن یا پایان فایل
+        }
+        for (int slot = 0; slot < 2; slot++) {
+            int base = slot * SLOT_STRIDE;
+            if (slots.position() < base + SLOT_SIZE) break;
+            long slotVersion = slots.getLong(base);
+            long slotOffset = slots.getLong(base + 8);
+            if (slots.getInt(base + 16) == crc(slotVersion, slotOffset) && slotVersion > version) {
+                version = slotVersion;
+                offset = slotOffset;
+            }
+        }
+    }
+
+    private ConcurrentLongSet loadSnapshot() throws IOException {
+        if (!Files.exists(snapshotPath)) {
+            return new ConcurrentLongSet();
+        }
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(snapshotPath), 64 * 1024)) {
+            return ConcurrentLongSet.readFrom(in);
+        }
+    }
+
+    private void loadChats() throws IOException {
+        long size = chatsFile.size();
+        ByteBuffer data = ByteBuffer.allocate((int) Math.min(size, Integer.MAX_VALUE));
+        while (data.hasRemaining() && chatsFile.read(data, data.position()) > 0) {
+            // ادامه تا پر شدن
+        }
+        data.flip();
+
+        while (data.remaining() >= CHAT_RECORD_SIZE) {
+            long chatId = data.getLong();
+            if (data.getInt() != crc(chatId)) {
+                data.position(data.position() - CHAT_RECORD_SIZE);
+                break;
+            }
+            chats.add(chatId);
+            logRecords++;
+        }
+
+        // حذف رکورد نیمه‌کاره یا خراب انتهای فایل (نوشتن قبلی با قطع برق کامل نشده بود)
+        if (data.position() < size) {
+            LOG.warn("⚠️ {} بایت ناقص از انتهای فهرست چت‌ها حذف شد.", size - data.position());
+            chatsFile.truncate(data.position());
+            chatsFile.force(true);
+        }
+    }
+
+    private static int crc(long... values) {
+        CRC32 crc = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * Long.BYTES);
+        for (long value : values) {
+            buffer.putLong(value);
+        }
+        crc.update(buffer.array());
+        return (int) crc.getValue();
+    }
+}
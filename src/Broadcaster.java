@@ -0,0 +1,233 @@
+import org.apache.logging.log4j.Logger;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * موتور ارسال گروهی
+ * ارسال‌های هر چت روی virtual thread ها به صورت موازی اجرا می‌شوند و محدودیت‌های تلگرام رعایت می‌شود:
+ * حدود 30 پیام در ثانیه به صورت کلی (با اولویت کمتر از پاسخ به دستورات در SendScheduler)، 1 پیام در ثانیه برای هر چت
+ * و 20 پیام در دقیقه برای هر گروه.
+ * ترتیب پیام‌های هر چت حفظ می‌شود.
+ * تعداد مراحل صف‌شده و در حال اجرا محدود است: وقتی پر باشد submit منتظر می‌ماند تا مرحله‌ای تمام شود،
+ * پس تولیدکننده (مثلاً خواندن استریمی اکسل) جلوتر از ارسال نمی‌رود و حافظه با تعداد کاربران بزرگ نمی‌شود.
+ * ارسال گروهی کم‌اهمیت (مثل اعلان آنلاین شدن) می‌تواند نرخ کمتری داشته باشد تا سهم پاسخ به دستورات باقی بماند،
+ * و با cancel() متوقف شود.
+ * پیشرفت هر 5 ثانیه در کنسول چاپ می‌شود و با reportTo() می‌تواند در یک پیام تلگرام (مثلاً در چت مدیر) هم نمایش داده شود.
+ */
+public class Broadcaster {
+
+    private static final Logger LOG = AsyncLogging.logger("broadcast");
+
+    // محدودیت هر چت - chat_id منفی یعنی گروه یا کانال
+    // محدودکننده‌هایی که یک دقیقه استفاده نشده‌اند (سطل پر) حذف می‌شوند تا نقشه با تعداد چت‌ها بزرگ نماند
+    private static final Map<Long, RateLimiter> CHAT_LIMITERS = new ConcurrentHashMap<>();
+    private static final long LIMITER_IDLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final AtomicLong NEXT_LIMITER_SWEEP = new AtomicLong(System.nanoTime() + LIMITER_IDLE_NANOS);
+
+    private static final long REPORT_INTERVAL_SECONDS = 5;
+    private static final int MAX_PENDING_STEPS = Integer.getInteger("bot.broadcast.maxPending", 1000);
+
+    /**
+     * یک مرحله ارسال (مثلاً یک پیام یا یک عکس)
+     * در صورت موفقیت true برمی‌گرداند
+     */
+    @FunctionalInterface
+    public interface Step {
+        boolean send() throws Exception;
+    }
+
+    private final String name;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final ScheduledExecutorService reporter;
+
+    // محدودیت نرخ مخصوص این ارسال گروهی (null یعنی فقط محدودیت کلی)
+    private final RateLimiter jobLimiter;
+    private volatile boolean cancelled;
+    private volatile ProgressMessage progress;
+
+    // آخرین مرحله صف‌شده برای هر چت؛ مرحله بعدی پشت آن زنجیر می‌شود (بعد از پایان حذف می‌شود)
+    private final Map<Long, CompletableFuture<Void>> tails = new ConcurrentHashMap<>();
+    // سهمیه مراحل صف‌شده و در حال اجرا (با پایان هر مرحله آزاد می‌شود)
+    private final Semaphore pending = new Semaphore(MAX_PENDING_STEPS);
+
+    private final AtomicInteger submitted = new AtomicInteger();
+    private final AtomicInteger sent = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final long startNanos = System.nanoTime();
+
+    /**
+     * @param name نام ارسال گروهی (برای گزارش پیشرفت)
+     */
+    public Broadcaster(String name) {
+        this(name, null);
+    }
+
+    /**
+     * @param name نام ارسال گروهی (برای گزارش پیشرفت)
+     * @param jobLimiter محدودیت نرخ اضافه برای این ارسال گروهی (علاوه بر محدودیت کلی ربات) یا null
+     */
+    public Broadcaster(String name, RateLimiter jobLimiter) {
+        this.name = name;
+        this.jobLimiter = jobLimiter;
+        this.reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "broadcast-report-" + name);
+            t.setDaemon(true);
+            return t;
+        });
+        reporter.scheduleAtFixedRate(this::printProgress, REPORT_INTERVAL_SECONDS, REPORT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * نمایش پیشرفت این ارسال گروهی در یک پیام پیشرفت (باید قبل از اولین submit صدا زده شود)
+     * هر مرحله (پیام یا آلبوم) یک مورد حساب می‌شود
+     */
+    public void reportTo(ProgressMessage progress) {
+        this.progress = progress;
+    }
+
+    /**
+     * صف کردن یک مرحله برای یک چت
+     * مراحل هر چت به همان ترتیبی که اضافه شده‌اند اجرا می‌شوند
+     * اگر MAX_PENDING_STEPS مرحله هنوز تمام نشده باشند، تا پایان یکی از آن‌ها منتظر می‌ماند؛ بعد از لغو چیزی صف نمی‌شود
+     */
+    public void submit(Long chatId, Step step) {
+        pending.acquireUninterruptibly();
+        if (cancelled) {
+            pending.release();
+            return;
+        }
+        submitted.incrementAndGet();
+        ProgressMessage progress = this.progress;
+        if (progress != null) {
+            progress.addTotal(1);
+        }
+        CompletableFuture<Void> tail = tails.compute(chatId, (id, previous) -> {
+            CompletableFuture<Void> base = previous == null ? CompletableFuture.completedFuture(null) : previous;
+            return base.thenRunAsync(() -> runStep(id, step), executor);
+        });
+        // بیرون از compute ثبت می‌شود چون مرحله ردشده (بعد از لغو) همین‌جا و روی همین thread کامل می‌شود
+        tail.whenComplete((ignored, e) -> {
+            tails.remove(chatId, tail);
+            pending.release();
+        });
+    }
+
+    /**
+     * لغو ارسال گروهی: مراحلی که هنوز شروع نشده‌اند اجرا نمی‌شوند و مراحلی که منتظر نوبت هستند بیدار می‌شوند
+     */
+    public void cancel() {
+        if (!cancelled) {
+            cancelled = true;
+            executor.shutdownNow();
+            LOG.info("⏹️ [{}] ارسال گروهی لغو شد.", name);
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * صبر تا پایان همه ارسال‌ها و چاپ گزارش نهایی
+     */
+    public void awaitCompletion() {
+        // بعد از لغو، مراحل زنجیرشده به executor بسته‌شده رد می‌شوند؛ آن‌ها جزو لغو شده‌ها هستند
+        CompletableFuture.allOf(tails.values().toArray(new CompletableFuture<?>[0])).exceptionally(e -> null).join();
+        reporter.shutdownNow();
+        executor.shutdown();
+
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        LOG.info("🏁 [{}] پایان ارسال: {} موفق، {} ناموفق از {}{} در {} ثانیه ({} پیام در ثانیه)",
+                name, sent.get(), failed.get(), submitted.get(), cancelled ? " (" + remaining() + " لغو شده)" : "",
+                String.format("%.1f", seconds), String.format("%.1f", rate(seconds)));
+
+        ProgressMessage progress = this.progress;
+        if (progress != null) {
+            progress.finish((cancelled ? "⏹️ لغو شد: " : "🏁 تمام شد: ") + progress.title());
+        }
+    }
+
+    private void runStep(Long chatId, Step step) {
+        if (cancelled) return;
+        try {
+            if (jobLimiter != null) {
+                jobLimiter.acquire();
+                if (cancelled) return;
+            }
+            limiterFor(chatId).acquire();
+            // محدودیت کلی ربات در صف BULK زمان‌بند ارسال اعمال می‌شود تا پاسخ به دستورات جلو بیفتد
+            SendScheduler.LaneScope scope = SendScheduler.lane(SendScheduler.Lane.BULK);
+            try {
+                record(step.send());
+            } finally {
+                scope.close();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (!cancelled) {
+                record(false);
+            }
+        } catch (Exception e) {
+            LOG.warn("⚠️ خطا در ارسال به {}: {}", chatId, e.getMessage());
+            record(false);
+        }
+    }
+
+    private void record(boolean ok) {
+        (ok ? sent : failed).incrementAndGet();
+        ProgressMessage progress = this.progress;
+        if (progress != null) {
+            progress.record(ok);
+        }
+    }
+
+    /**
+     * محدودیت نرخ هر چت (مشترک بین همه ارسال‌های گروهی و پیام‌های پیشرفت)
+     */
+    static RateLimiter limiterFor(Long chatId) {
+        long now = System.nanoTime();
+        long sweepAt = NEXT_LIMITER_SWEEP.get();
+        if (now - sweepAt >= 0 && NEXT_LIMITER_SWEEP.compareAndSet(sweepAt, now + LIMITER_IDLE_NANOS)) {
+            evictIdleLimiters();
+        }
+        return CHAT_LIMITERS.computeIfAbsent(chatId, id -> id < 0
+                ? RateLimiter.perMinute(20, 1)
+                : RateLimiter.perSecond(1, 1));
+    }
+
+    /**
+     * حذف محدودکننده چت‌هایی که سطلشان پر است و یک دقیقه از آن‌ها استفاده نشده
+     * (حذف داخل computeIfPresent انجام می‌شود تا با ساختن همزمان محدودکننده همان چت تداخل نکند)
+     */
+    private static void evictIdleLimiters() {
+        int before = CHAT_LIMITERS.size();
+        for (Long chatId : CHAT_LIMITERS.keySet()) {
+            CHAT_LIMITERS.computeIfPresent(chatId, (id, limiter) -> limiter.isIdle(LIMITER_IDLE_NANOS) ? null : limiter);
+        }
+        LOG.debug("🧹 {} محدودکننده بیکار چت حذف شد ({} باقی ماند).", before - CHAT_LIMITERS.size(), CHAT_LIMITERS.size());
+    }
+
+    private void printProgress() {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        int done = sent.get() + failed.get();
+        LOG.info("📊 [{}] {}/{} (ناموفق: {}) - {} پیام در ثانیه", name, done, submitted.get(), failed.get(),
+                String.format("%.1f", rate(seconds)));
+    }
+
+    private int remaining() {
+        return submitted.get() - sent.get() - failed.get();
+    }
+
+    private double rate(double seconds) {
+        return seconds > 0 ? (sent.get() + failed.get()) / seconds : 0;
+    }
+}
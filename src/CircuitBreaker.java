@@ -0,0 +1,100 @@
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * قطع‌کننده مدار برای درخواست‌های خروجی
+ * اگر چند درخواست پشت سر هم با خطای موقت (5xx یا خطای شبکه) مواجه شوند، مدار باز می‌شود و ارسال‌ها
+ * تا پایان زمان استراحت متوقف می‌مانند (به جای اینکه کل لیست کاربران با خطا از دست برود).
+ * بعد از آن یک درخواست آزمایشی عبور می‌کند؛ اگر موفق بود مدار بسته و در غیر این صورت با زمان استراحت دو برابر دوباره باز می‌شود.
+ * تلاش‌های مجدد خود درخواست آزمایشی (مثلاً بعد از 429) منتظر نمی‌مانند و هر پاسخ تلگرام (حتی 429) مدار را می‌بندد.
+ */
+public class CircuitBreaker {
+
+    private static final Logger LOG = AsyncLogging.logger("telegram");
+
+    private enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int failureThreshold;
+    private final long baseCooldownNanos;
+    private final long maxCooldownNanos;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long cooldownNanos;
+    private long openUntil;
+    // درخواستی که در HALF_OPEN به عنوان درخواست آزمایشی عبور کرد (همه تلاش‌های آن همین شیء را دارند)
+    private Object trial;
+
+    /**
+     * @param failureThreshold تعداد خطای پشت سر هم برای باز شدن مدار
+     * @param baseCooldownMillis زمان استراحت اولیه
+     * @param maxCooldownMillis حداکثر زمان استراحت
+     */
+    public CircuitBreaker(int failureThreshold, long baseCooldownMillis, long maxCooldownMillis) {
+        this.failureThreshold = failureThreshold;
+        this.baseCooldownNanos = TimeUnit.MILLISECONDS.toNanos(baseCooldownMillis);
+        this.maxCooldownNanos = TimeUnit.MILLISECONDS.toNanos(maxCooldownMillis);
+        this.cooldownNanos = baseCooldownNanos;
+    }
+
+    /**
+     * مدت زمانی که درخواست باید صبر کند (0 یعنی بلافاصله مجاز است)
+     * @param request شناسه درخواست که در همه تلاش‌های مجدد آن یکسان است
+     */
+    public synchronized long delayMillis(Object request) {
+        if (state == State.OPEN) {
+            long remaining = openUntil - System.nanoTime();
+            if (remaining > 0) {
+                return Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining));
+            }
+            // پایان استراحت: فقط یک درخواست آزمایشی عبور می‌کند
+            state = State.HALF_OPEN;
+            trial = request;
+            return 0;
+        }
+        if (state == State.HALF_OPEN && request != trial) {
+            // منتظر نتیجه درخواست آزمایشی
+            return TimeUnit.NANOSECONDS.toMillis(baseCooldownNanos) / 10 + 1;
+        }
+        return 0;
+    }
+
+    public synchronized void onSuccess() {
+        if (state != State.CLOSED) {
+            LOG.info("🟢 ارتباط با تلگرام برقرار شد؛ ارسال‌ها ادامه پیدا می‌کنند.");
+        }
+        state = State.CLOSED;
+        trial = null;
+        consecutiveFailures = 0;
+        cooldownNanos = baseCooldownNanos;
+    }
+
+    /**
+     * پاسخ 429: تلگرام در دسترس است ولی محدودیت اعمال کرده (کنترل‌کننده نرخ آن را مدیریت می‌کند)
+     * در HALF_OPEN نتیجه درخواست آزمایشی است و مدار بسته می‌شود؛ در غیر این صورت وضعیت تغییر نمی‌کند
+     */
+    public synchronized void onThrottled() {
+        if (state == State.HALF_OPEN) {
+            onSuccess();
+        }
+    }
+
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN) {
+            cooldownNanos = Math.min(maxCooldownNanos, cooldownNanos * 2);
+            open();
+        } else if (state == State.CLOSED && consecutiveFailures >= failureThreshold) {
+            open();
+        }
+    }
+
+    private void open() {
+        state = State.OPEN;
+        trial = null;
+        openUntil = System.nanoTime() + cooldownNanos;
+        LOG.warn("🔴 {} خطای پشت سر هم؛ ارسال‌ها برای {} ثانیه متوقف می‌شوند.",
+                consecutiveFailures, TimeUnit.NANOSECONDS.toSeconds(cooldownNanos));
+    }
+}
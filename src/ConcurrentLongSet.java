@@ -0,0 +1,233 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * مجموعه همزمان long (برای chat_id ها) با آدرس‌دهی باز (linear probing) روی یک آرایه long[]
+ * به جای HashSet&lt;Long&gt; که برای هر عضو یک Long و یک Node می‌سازد (حدود 50 بایت یا بیشتر)،
+ * هر عضو فقط یک خانه 8 بایتی در جدول است (با ضریب بار حداکثر 0.75 حدود 11 تا 21 بایت برای هر چت).
+ *
+ * خواندن (contains، size، forEach) بدون قفل و بدون ساختن شیء انجام می‌شود؛ نوشتن‌ها با قفل this یکی‌یکی انجام می‌شوند.
+ * هنگام بزرگ شدن، جدول جدید ساخته و سپس منتشر می‌شود و جدول قدیمی دیگر تغییر نمی‌کند؛
+ * بنابراین خواننده‌ها همیشه یک جدول سالم می‌بینند.
+ * مقدار 0 در جدول یعنی خانه خالی؛ خود عدد 0 جداگانه نگهداری می‌شود.
+ */
+public class ConcurrentLongSet {
+
+    private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private static final int MAGIC = 0x4C534554; // "LSET"
+    private static final int MIN_CAPACITY = 16;
+
+    private volatile long[] table;
+    private volatile boolean containsZero;
+    private volatile int size;
+
+    public ConcurrentLongSet() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize تعداد تقریبی اعضا (برای جلوگیری از بزرگ شدن‌های پی‌درپی)
+     */
+    public ConcurrentLongSet(int expectedSize) {
+        this.table = new long[capacityFor(expectedSize)];
+    }
+
+    /**
+     * @return true اگر عضو جدید بود
+     */
+    public synchronized boolean add(long value) {
+        if (value == 0) {
+            if (containsZero) return false;
+            containsZero = true;
+            size++;
+            return true;
+        }
+
+        long[] current = table;
+        if (!insert(current, value, true)) return false;
+        size++;
+        if (size > current.length - (current.length >>> 2)) {
+            table = rehash(current, current.length << 1);
+        }
+        return true;
+    }
+
+    /**
+     * بررسی عضویت بدون قفل و بدون ساختن شیء
+     */
+    public boolean contains(long value) {
+        if (value == 0) return containsZero;
+        long[] current = table;
+        int mask = current.length - 1;
+        for (int i = indexOf(value, mask); ; i = (i + 1) & mask) {
+            long slot = (long) SLOTS.getAcquire(current, i);
+            if (slot == value) return true;
+            if (slot == 0) return false;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * حافظه تقریبی جدول بر حسب بایت
+     */
+    public long memoryBytes() {
+        return (long) table.length * Long.BYTES;
+    }
+
+    /**
+     * پیمایش بدون قفل؛ همه اعضای موجود در شروع پیمایش دیده می‌شوند و اعضایی که همزمان اضافه می‌شوند ممکن است دیده شوند
+     */
+    public void forEach(LongConsumer action) {
+        if (containsZero) action.accept(0);
+        long[] current = table;
+        for (int i = 0; i < current.length; i++) {
+            long slot = (long) SLOTS.getAcquire(current, i);
+            if (slot != 0) action.accept(slot);
+        }
+    }
+
+    /**
+     * کپی ثابت اعضا (مثلاً برای ارسال گروهی که نباید با اضافه شدن چت‌های جدید تغییر کند)
+     */
+    public synchronized long[] toArray() {
+        long[] values = new long[size];
+        int n = 0;
+        if (containsZero) values[n++] = 0;
+        for (long slot : table) {
+            if (slot != 0) values[n++] = slot;
+        }
+        return values;
+    }
+
+    /**
+     * نوشتن اعضا با فرمت فشرده: MAGIC، تعداد، اعضای مرتب‌شده به صورت اختلاف با عضو قبلی (varint) و CRC32
+     * chat_id های نزدیک به هم (مثل کاربران یک دوره) معمولاً 2 تا 5 بایت جا می‌گیرند
+     */
+    public void writeTo(OutputStream stream) throws IOException {
+        long[] values = toArray();
+        Arrays.sort(values);
+
+        CRC32 crc = new CRC32();
+        DataOutputStream out = new DataOutputStream(new CheckedOutputStream(stream, crc));
+        out.writeInt(MAGIC);
+        out.writeInt(values.length);
+        long previous = 0;
+        for (int i = 0; i < values.length; i++) {
+            // عضو اول zigzag (ممکن است منفی باشد، مثل گروه‌ها)، بقیه اختلاف بدون علامت با عضو قبلی
+            writeVarLong(out, i == 0 ? (values[0] << 1) ^ (values[0] >> 63) : values[i] - previous);
+            previous = values[i];
+        }
+        out.flush();
+        new DataOutputStream(stream).writeInt((int) crc.getValue());
+    }
+
+    /**
+     * خواندن مجموعه‌ای که با writeTo نوشته شده است
+     * @throws IOException اگر فایل ناقص یا خراب باشد
+     */
+    public static ConcurrentLongSet readFrom(InputStream stream) throws IOException {
+        CRC32 crc = new CRC32();
+        DataInputStream in = new DataInputStream(new CheckedInputStream(stream, crc));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("فرمت فایل مجموعه chat_id ها نامعتبر است");
+        }
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("تعداد اعضا نامعتبر است: " + count);
+        }
+
+        ConcurrentLongSet set = new ConcurrentLongSet(count);
+        long previous = 0;
+        for (int i = 0; i < count; i++) {
+            long encoded = readVarLong(in);
+            previous = i == 0 ? (encoded >>> 1) ^ -(encoded & 1) : previous + encoded;
+            set.add(previous);
+        }
+        int expected = (int) crc.getValue();
+        if (new DataInputStream(stream).readInt() != expected) {
+            throw new IOException("CRC مجموعه chat_id ها مطابقت ندارد");
+        }
+        return set;
+    }
+
+    private static boolean insert(long[] target, long value, boolean release) {
+        int mask = target.length - 1;
+        for (int i = indexOf(value, mask); ; i = (i + 1) & mask) {
+            long slot = target[i];
+            if (slot == value) return false;
+            if (slot == 0) {
+                if (release) {
+                    SLOTS.setRelease(target, i, value);
+                } else {
+                    target[i] = value;
+                }
+                return true;
+            }
+        }
+    }
+
+    private static long[] rehash(long[] old, int capacity) {
+        long[] grown = new long[capacity];
+        for (long value : old) {
+            if (value != 0) insert(grown, value, false);
+        }
+        // انتشار با نوشتن volatile در table انجام می‌شود
+        return grown;
+    }
+
+    private static int indexOf(long value, int mask) {
+        // پخش کردن بیت‌ها (fmix64 از MurmurHash3) تا chat_id های پشت سر هم در خانه‌های کنار هم جمع نشوند
+        long h = value;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h & mask;
+    }
+
+    private static int capacityFor(int expectedSize) {
+        long needed = Math.max(MIN_CAPACITY, (long) Math.ceil(expectedSize / 0.75) + 1);
+        if (needed > 1 << 30) {
+            throw new IllegalArgumentException("تعداد اعضا بیش از حد است: " + expectedSize);
+        }
+        return Integer.highestOneBit((int) needed - 1) << 1;
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new EOFException("varint نامعتبر");
+    }
+}
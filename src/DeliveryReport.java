@@ -0,0 +1,334 @@
+import org.apache.logging.log4j.Logger;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * گزارش تحویل یک ارسال گروهی در فایل اکسل
+ * برای هر کاربر یک سطر: username، chat_id، عکس‌های اختصاص‌یافته، کد وضعیت، تعداد تلاش مجدد و زمان ارسال.
+ *
+ * سطرها در حین ارسال با SXSSFWorkbook نوشته می‌شوند (فقط 100 سطر آخر در حافظه) و حافظه با تعداد کاربران بزرگ نمی‌شود.
+ * کاربرانی که مراحلشان هنوز تمام نشده هم در حافظه می‌مانند؛ تعدادشان با سقف مراحل در جریان Broadcaster محدود است،
+ * پس entry() باید درست قبل از submit مراحل همان کاربر صدا زده شود (نه برای کل لیست از قبل).
+ * گزارش در چند فایل ساخته می‌شود (هر کدام حداکثر bot.report.rowsPerPart سطر، پیش‌فرض 10000):
+ * هر فایل وقتی پر شد بسته و با rename اتمیک ثبت می‌شود و سطرهای فایل در حال ساخت همزمان در یک CSV هم نوشته می‌شوند
+ * (که بعد از ثبت فایل اکسل حذف می‌شود)؛ اگر برنامه وسط ارسال متوقف شود، همه سطرهای نوشته‌شده باقی می‌مانند.
+ * فایل‌ها در پوشه reports/ (قابل تغییر با -Dbot.report.dir) ذخیره می‌شوند و همه نوشتن‌ها روی یک thread انجام می‌شوند.
+ */
+public class DeliveryReport {
+
+    private static final Logger LOG = AsyncLogging.logger("report");
+
+    private static final int ROW_WINDOW = 100;
+    private static final int ROWS_PER_PART = Integer.getInteger("bot.report.rowsPerPart", 10_000);
+    private static final String[] HEADERS = {"username", "chat_id", "photos", "status", "retries", "latency_ms"};
+
+    // نتیجه ارسال‌هایی که thread جاری برای یک کاربر انجام می‌دهد
+    private static final ThreadLocal<Entry> CURRENT = new ThreadLocal<>();
+
+    private record Line(String username, Long chatId, String photos, Object status, int retries, long latencyMillis) {}
+
+    private final Path directory;
+    private final String baseName;
+    private final ExecutorService writer;
+
+    // کاربرانی که هنوز همه مراحلشان اجرا نشده (هنگام بستن به عنوان لغو شده ثبت می‌شوند)
+    // حداکثر به اندازه مراحل در جریان Broadcaster (bot.broadcast.maxPending) به علاوه یک
+    private final Set<Entry> open = ConcurrentHashMap.newKeySet();
+
+    // فقط از thread نویسنده
+    private SXSSFWorkbook workbook;
+    private Sheet sheet;
+    private BufferedWriter journal;
+    private int part;
+    private int partRows;
+    private int totalRows;
+
+    /**
+     * @param name نام ارسال گروهی (در نام فایل گزارش)
+     */
+    public DeliveryReport(String name) {
+        this.directory = Path.of(System.getProperty("bot.report.dir", "reports"));
+        this.baseName = "delivery-" + name + "-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+        this.writer = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "delivery-report-" + name);
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * نتیجه ارسال به یک کاربر که از یک یا چند مرحله Broadcaster تشکیل شده است
+     * سطر گزارش بعد از اجرای آخرین مرحله نوشته می‌شود
+     */
+    public final class Entry {
+        private final String username;
+        private final Long chatId;
+        private final List<File> photos;
+        private final AtomicInteger remainingSteps;
+
+        // با قفل this
+        // نتیجه اولین مرحله ناموفق (کد HTTP یا نام خطا)؛ null یعنی همه مراحل تا اینجا موفق بوده‌اند
+        private Object status;
+        private boolean stepped;
+        // آخرین کد ناموفق و خطای مرحله در حال اجرا (مراحل یک کاربر پشت سر هم اجرا می‌شوند)
+        private int stepCode;
+        private String stepError;
+        private int retries;
+        private long latencyNanos;
+
+        private Entry(String username, Long chatId, List<File> photos, int steps) {
+            this.username = username;
+            this.chatId = chatId;
+            this.photos = photos;
+            this.remainingSteps = new AtomicInteger(steps);
+        }
+
+        /**
+         * مرحله‌ای که نتیجه نهایی، تلاش‌های مجدد و زمان اجرایش در سطر این کاربر ثبت می‌شود
+         */
+        public Broadcaster.Step step(Broadcaster.Step step) {
+            return () -> {
+                Entry previous = CURRENT.get();
+                CURRENT.set(this);
+                long start = System.nanoTime();
+                beginStep();
+                try {
+                    boolean ok = step.send();
+                    endStep(ok ? null : failedStepStatus());
+                    return ok;
+                } catch (Exception e) {
+                    endStep(e.getClass().getSimpleName());
+                    throw e;
+                } finally {
+                    CURRENT.set(previous);
+                    synchronized (this) {
+                        latencyNanos += System.nanoTime() - start;
+                    }
+                    if (remainingSteps.decrementAndGet() == 0) {
+                        complete(null);
+                    }
+                }
+            };
+        }
+
+        private synchronized void beginStep() {
+            stepCode = 0;
+            stepError = null;
+        }
+
+        /**
+         * وضعیت سطر نتیجه مراحل است نه اولین پاسخ خام: مرحله‌ای که در نهایت موفق شد (مثلاً آلبوم رد شد و عکس‌ها
+         * تک‌تک رسیدند) ناموفق ثبت نمی‌شود. اولین مرحله ناموفق وضعیت سطر را تعیین می‌کند.
+         * @param failure نتیجه مرحله ناموفق یا null اگر مرحله موفق بود
+         */
+        private synchronized void endStep(Object failure) {
+            stepped = true;
+            if (status == null) {
+                status = failure;
+            }
+        }
+
+        private synchronized Object failedStepStatus() {
+            return stepError != null ? stepError : stepCode != 0 ? (Object) stepCode : "failed";
+        }
+
+        private synchronized void record(TelegramClient.Response response) {
+            if (!response.isOk()) {
+                stepCode = response.statusCode();
+            }
+            retries += response.attempts() - 1;
+        }
+
+        private synchronized void recordFailure(Throwable error) {
+            if (error instanceof TelegramClient.RequestFailedException failed) {
+                retries += failed.attempts() - 1;
+                error = failed.getCause();
+            }
+            stepError = error.getClass().getSimpleName();
+        }
+
+        private void complete(String override) {
+            if (!open.remove(this)) return;
+            Line line;
+            synchronized (this) {
+                Object result = override != null ? override : status != null ? status : stepped ? (Object) 200 : "no_response";
+                line = new Line(username, chatId, photos.stream().map(File::getName).collect(Collectors.joining(", ")),
+                        result, retries, TimeUnit.NANOSECONDS.toMillis(latencyNanos));
+            }
+            write(line);
+        }
+    }
+
+    /**
+     * شروع ثبت نتیجه یک کاربر
+     * @param photos عکس‌هایی که به این کاربر اختصاص داده شده (برای گزارش)
+     * @param steps تعداد مراحلی که برای این کاربر با entry.step در Broadcaster صف می‌شوند
+     */
+    public Entry entry(String username, Long chatId, List<File> photos, int steps) {
+        Entry entry = new Entry(username, chatId, photos, steps);
+        open.add(entry);
+        return entry;
+    }
+
+    /**
+     * ثبت کاربری که ارسالی برایش انجام نشد (مثلاً chat_id پیدا نشد)
+     */
+    public void skipped(String username, List<File> photos, String status) {
+        write(new Line(username, null, photos.stream().map(File::getName).collect(Collectors.joining(", ")), status, 0, 0));
+    }
+
+    /**
+     * ثبت پاسخ تلگرام در سطر کاربری که thread جاری برایش ارسال می‌کند (اگر وجود داشته باشد)
+     */
+    static void record(TelegramClient.Response response) {
+        Entry entry = CURRENT.get();
+        if (entry != null) {
+            entry.record(response);
+        }
+    }
+
+    /**
+     * ثبت خطای درخواستی که پاسخی نگرفت (مثلاً timeout در همه تلاش‌ها) در سطر کاربری که thread جاری برایش ارسال می‌کند
+     */
+    static void recordFailure(Throwable error) {
+        Entry entry = CURRENT.get();
+        if (entry != null) {
+            entry.recordFailure(error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+        }
+    }
+
+    /**
+     * ثبت کاربرانی که مراحلشان اجرا نشد (لغو)، بستن فایل آخر و صبر تا پایان نوشتن
+     * باید بعد از Broadcaster.awaitCompletion صدا زده شود
+     */
+    public void close() {
+        for (Entry entry : open) {
+            entry.complete("cancelled");
+        }
+        writer.execute(() -> {
+            try {
+                // گزارش خالی هم ساخته می‌شود (فقط سطر عنوان)
+                if (part == 0) openPart();
+                if (workbook != null) closePart();
+                LOG.info("📄 گزارش تحویل: {} سطر در {} فایل ({}-*.xlsx)", totalRows, part, directory.resolve(baseName));
+            } catch (IOException e) {
+                LOG.error("⚠️ خطا در نوشتن گزارش تحویل: {}", e.getMessage(), e);
+            }
+        });
+        writer.shutdown();
+        try {
+            writer.awaitTermination(60, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write(Line line) {
+        writer.execute(() -> {
+            try {
+                writeLine(line);
+            } catch (IOException e) {
+                LOG.error("⚠️ خطا در نوشتن گزارش تحویل برای {}: {}", line.chatId(), e.getMessage());
+            }
+        });
+    }
+
+    private void writeLine(Line line) throws IOException {
+        if (workbook == null) {
+            openPart();
+        }
+
+        Row row = sheet.createRow(++partRows);
+        if (line.username() != null) row.createCell(0).setCellValue(line.username());
+        if (line.chatId() != null) row.createCell(1).setCellValue(line.chatId());
+        row.createCell(2).setCellValue(line.photos());
+        if (line.status() instanceof Integer code) {
+            row.createCell(3).setCellValue(code);
+        } else {
+            row.createCell(3).setCellValue(String.valueOf(line.status()));
+        }
+        row.createCell(4).setCellValue(line.retries());
+        row.createCell(5).setCellValue(line.latencyMillis());
+
+        journal.write(csv(line.username()) + "," + (line.chatId() != null ? line.chatId() : "") + "," + csv(line.photos()) + ","
+                + csv(String.valueOf(line.status())) + "," + line.retries() + "," + line.latencyMillis());
+        journal.newLine();
+        // بدون fsync؛ با توقف برنامه (نه سیستم‌عامل) چیزی از دست نمی‌رود
+        journal.flush();
+        totalRows++;
+
+        if (partRows >= ROWS_PER_PART) {
+            closePart();
+            LOG.info("📄 بخش {} گزارش تحویل ثبت شد ({} سطر تا اینجا).", part, totalRows);
+        }
+    }
+
+    private void openPart() throws IOException {
+        Files.createDirectories(directory);
+        part++;
+        partRows = 0;
+        workbook = new SXSSFWorkbook(ROW_WINDOW);
+        sheet = workbook.createSheet("Delivery");
+        Row header = sheet.createRow(0);
+        for (int i = 0; i < HEADERS.length; i++) {
+            header.createCell(i).setCellValue(HEADERS[i]);
+        }
+
+        journal = Files.newBufferedWriter(partPath(".csv"));
+        // BOM تا اکسل فایل را UTF-8 بخواند
+        journal.write('\uFEFF');
+        journal.write(String.join(",", HEADERS));
+        journal.newLine();
+        journal.flush();
+    }
+
+    /**
+     * ثبت فایل اکسل بخش جاری (فایل موقت و rename اتمیک) و حذف CSV آن
+     */
+    private void closePart() throws IOException {
+        Path target = partPath(".xlsx");
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            workbook.write(out);
+        } finally {
+            workbook.close();
+            // حذف فایل‌های موقت SXSSF
+            workbook.dispose();
+            workbook = null;
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        journal.close();
+        Files.delete(partPath(".csv"));
+    }
+
+    private Path partPath(String extension) {
+        return directory.resolve(baseName + "-" + String.format("%03d", part) + extension);
+    }
+
+    private static String csv(String value) {
+        if (value == null) return "";
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) return value;
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
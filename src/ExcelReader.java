@@ -1,12 +1,23 @@
+import org.apache.logging.log4j.Logger;
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * کلاس خواندن اطلاعات کاربران از فایل اکسل
@@ -14,8 +25,13 @@ import java.util.List;
  */
 public class ExcelReader {
 
+    private static final Logger LOG = AsyncLogging.logger("users");
+
     private static final String[] DEFAULT_HEADERS = {"username", "gender", "lastname", "chat_id"};
 
+    // یک قفل برای هر فایل اکسل تا نوشتن همزمان روی یک فایل رخ ندهد
+    private static final Map<Path, Object> FILE_LOCKS = new ConcurrentHashMap<>();
+
     /**
      * خواندن لیست کاربران از فایل اکسل
      * ستون‌های مورد انتظار: username, gender, lastname
@@ -23,6 +39,7 @@ public class ExcelReader {
      * @return لیست کاربران
      */
     public static List<User> readUsersFromExcel(String filePath) {
+        long start = System.nanoTime();
         List<User> users = new ArrayList<>();
 
         try (FileInputStream fis = new FileInputStream(filePath);
@@ -35,7 +52,7 @@ public class ExcelReader {
             HeaderIndexes indexes = resolveHeaders(headerRow);
 
             if (indexes.usernameCol == -1) {
-                System.out.println("خطا: ستون username در فایل اکسل پیدا نشد!");
+                LOG.error("خطا: ستون username در فایل اکسل پیدا نشد!");
                 return users;
             }
 
@@ -89,77 +106,150 @@ public class ExcelReader {
                 }
             }
 
-            System.out.println("تعداد " + users.size() + " کاربر از فایل اکسل خوانده شد.");
+            Metrics.EXCEL_LOAD.recordSince(start);
+            LOG.info("تعداد {} کاربر از فایل اکسل خوانده شد.", users.size());
 
         } catch (IOException e) {
-            System.out.println("خطا در خواندن فایل اکسل: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("خطا در خواندن فایل اکسل: {}", e.getMessage(), e);
         }
 
         return users;
     }
 
+    /**
+     * خواندن استریمی کاربران از فایل اکسل (مناسب فایل‌های بسیار بزرگ)
+     * سطرها همزمان با پردازش فایل تحویل داده می‌شوند و مصرف حافظه به تعداد سطرها بستگی ندارد.
+     * استریم باید پس از استفاده بسته شود (try-with-resources)
+     * @param filePath مسیر فایل اکسل
+     * @return استریم کاربران به ترتیب سطرها
+     */
+    public static Stream<User> streamUsersFromExcel(String filePath) {
+        StreamingUserReader reader = new StreamingUserReader(filePath);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(reader, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(reader::close);
+    }
+
     /**
      * ثبت یا به‌روزرسانی اطلاعات کاربر در فایل اکسل.
      * اگر کاربر با username یا chat_id موجود باشد، فقط مقادیر خالی تکمیل می‌شوند؛ وگرنه سطر جدید اضافه می‌شود.
      */
     public static void upsertUserRow(User user, String filePath) {
-        if ((user.getUsername() == null || user.getUsername().isBlank()) && user.getChatId() == null) {
-            System.out.println("⚠️ امکان ثبت کاربر بدون username یا chat_id وجود ندارد.");
-            return;
-        }
+        upsertUserRows(List.of(user), filePath);
+    }
 
-        Workbook workbook = null;
-        try {
-            File file = new File(filePath);
-            if (file.exists()) {
-                try (FileInputStream fis = new FileInputStream(file)) {
-                    workbook = new XSSFWorkbook(fis);
-                }
+    /**
+     * ثبت یا به‌روزرسانی چند کاربر با یک بار خواندن و یک بار نوشتن فایل اکسل.
+     * فایل ابتدا در یک فایل موقت نوشته و سپس به صورت اتمیک جایگزین می‌شود،
+     * و دو thread هیچ‌وقت همزمان روی یک فایل نمی‌نویسند.
+     * @return تعداد کاربرانی که ثبت شدند
+     */
+    public static int upsertUserRows(List<User> users, String filePath) {
+        List<User> valid = new ArrayList<>();
+        for (User user : users) {
+            if ((user.getUsername() == null || user.getUsername().isBlank()) && user.getChatId() == null) {
+                LOG.warn("⚠️ امکان ثبت کاربر بدون username یا chat_id وجود ندارد.");
             } else {
-                workbook = new XSSFWorkbook();
-            }
-
-            if (workbook.getNumberOfSheets() == 0) {
-                workbook.createSheet("Users");
+                valid.add(user);
             }
+        }
+        if (valid.isEmpty()) return 0;
+
+        Path target = Path.of(filePath).toAbsolutePath();
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        synchronized (FILE_LOCKS.computeIfAbsent(target, p -> new Object())) {
+            long start = System.nanoTime();
+            Workbook workbook = null;
+            try {
+                File file = target.toFile();
+                if (file.exists()) {
+                    try (FileInputStream fis = new FileInputStream(file)) {
+                        workbook = new XSSFWorkbook(fis);
+                    }
+                } else {
+                    workbook = new XSSFWorkbook();
+                }
 
-            Sheet sheet = workbook.getSheetAt(0);
-            Row headerRow = sheet.getRow(0);
-            if (headerRow == null) {
-                headerRow = sheet.createRow(0);
-                for (int i = 0; i < DEFAULT_HEADERS.length; i++) {
-                    headerRow.createCell(i).setCellValue(DEFAULT_HEADERS[i]);
+                if (workbook.getNumberOfSheets() == 0) {
+                    workbook.createSheet("Users");
                 }
-            }
 
-            HeaderIndexes indexes = resolveHeaders(headerRow);
-            if (indexes.chatIdCol == -1) {
-                indexes = ensureChatIdColumn(sheet, headerRow, indexes);
-            }
+                Sheet sheet = workbook.getSheetAt(0);
+                Row headerRow = sheet.getRow(0);
+                if (headerRow == null) {
+                    headerRow = sheet.createRow(0);
+                    for (int i = 0; i < DEFAULT_HEADERS.length; i++) {
+                        headerRow.createCell(i).setCellValue(DEFAULT_HEADERS[i]);
+                    }
+                }
 
-            int targetRowIndex = findExistingRow(sheet, indexes, user);
-            Row targetRow = targetRowIndex == -1 ? sheet.createRow(sheet.getLastRowNum() + 1) : sheet.getRow(targetRowIndex);
+                HeaderIndexes indexes = resolveHeaders(headerRow);
+                if (indexes.chatIdCol == -1) {
+                    indexes = ensureChatIdColumn(sheet, headerRow, indexes);
+                }
 
-            setCellIfEmpty(targetRow, indexes.usernameCol, user.getUsername());
-            setCellIfEmpty(targetRow, indexes.genderCol, user.getGender());
-            setCellIfEmpty(targetRow, indexes.lastnameCol, user.getLastname());
-            setChatIdIfEmpty(targetRow, indexes.chatIdCol, user.getChatId());
+                // یک بار پیمایش سطرها برای ساخت جدول جستجو، به جای پیمایش کامل برای هر کاربر
+                RowLookup lookup = RowLookup.build(sheet, indexes);
+                for (User user : valid) {
+                    int targetRowIndex = lookup.find(user);
+                    Row targetRow = targetRowIndex == -1 ? sheet.createRow(sheet.getLastRowNum() + 1) : sheet.getRow(targetRowIndex);
+
+                    setCellIfEmpty(targetRow, indexes.usernameCol, user.getUsername());
+                    setCellIfEmpty(targetRow, indexes.genderCol, user.getGender());
+                    setCellIfEmpty(targetRow, indexes.lastnameCol, user.getLastname());
+                    setChatIdIfEmpty(targetRow, indexes.chatIdCol, user.getChatId());
+                    lookup.add(targetRow, indexes);
+                    indexChatId(targetRow, indexes);
+                }
 
-            try (FileOutputStream fos = new FileOutputStream(filePath)) {
-                workbook.write(fos);
+                try (OutputStream out = Files.newOutputStream(tmp)) {
+                    workbook.write(out);
+                }
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                Metrics.EXCEL_FLUSH.recordSince(start);
+                LOG.info("📝 اطلاعات {} کاربر در فایل اکسل ثبت/به‌روزرسانی شد.", valid.size());
+                return valid.size();
+
+            } catch (IOException e) {
+                LOG.error("خطا در به‌روزرسانی فایل اکسل: {}", e.getMessage());
+                return 0;
+            } finally {
+                if (workbook != null) {
+                    try {
+                        workbook.close();
+                    } catch (IOException ignored) {}
+                }
+                // اگر نوشتن یا جایگزینی ناموفق بود فایل موقت نیمه‌کاره باقی نمی‌ماند (بعد از move وجود ندارد)
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException ignored) {}
             }
-            System.out.println("📝 اطلاعات کاربر در فایل اکسل ثبت/به‌روزرسانی شد.");
+        }
+    }
 
-        } catch (IOException e) {
-            System.out.println("خطا در به‌روزرسانی فایل اکسل: " + e.getMessage());
-        } finally {
-            if (workbook != null) {
+    /**
+     * ثبت username و chat_id نهایی سطر در پایگاه داده کاربران
+     */
+    private static void indexChatId(Row row, HeaderIndexes indexes) {
+        if (indexes.usernameCol == -1 || indexes.chatIdCol == -1) return;
+        Cell usernameCell = row.getCell(indexes.usernameCol);
+        Cell chatIdCell = row.getCell(indexes.chatIdCol);
+        if (usernameCell == null || chatIdCell == null) return;
+
+        Long chatId = null;
+        switch (chatIdCell.getCellType()) {
+            case NUMERIC -> chatId = (long) chatIdCell.getNumericCellValue();
+            case STRING -> {
                 try {
-                    workbook.close();
-                } catch (IOException ignored) {}
+                    chatId = Long.parseLong(chatIdCell.getStringCellValue().trim());
+                } catch (NumberFormatException ignored) {}
             }
         }
+        if (chatId == null) return;
+
+        User user = new User();
+        user.setUsername(getCellValue(usernameCell));
+        user.setChatId(chatId);
+        UserDatabase.shared().upsert(user);
     }
 
     private static HeaderIndexes ensureChatIdColumn(Sheet sheet, Row headerRow, HeaderIndexes current) {
@@ -204,40 +294,54 @@ public class ExcelReader {
         }
     }
 
-    private static int findExistingRow(Sheet sheet, HeaderIndexes indexes, User user) {
-        String normalizedUsername = user.getUsername() == null ? null : user.getUsername().trim().toLowerCase();
-        Long chatId = user.getChatId();
+    /**
+     * جدول جستجوی سطرها بر اساس username (بدون حساسیت به حروف) و chat_id
+     * اگر کاربری با هر دو کلید پیدا شود، سطر بالاتر انتخاب می‌شود
+     */
+    private static class RowLookup {
+        private final Map<String, Integer> byUsername = new HashMap<>();
+        private final Map<Long, Integer> byChatId = new HashMap<>();
 
-        for (int rowNum = 1; rowNum <= sheet.getLastRowNum(); rowNum++) {
-            Row row = sheet.getRow(rowNum);
-            if (row == null) continue;
+        static RowLookup build(Sheet sheet, HeaderIndexes indexes) {
+            RowLookup lookup = new RowLookup();
+            for (int rowNum = 1; rowNum <= sheet.getLastRowNum(); rowNum++) {
+                Row row = sheet.getRow(rowNum);
+                if (row != null) {
+                    lookup.add(row, indexes);
+                }
+            }
+            return lookup;
+        }
 
-            if (indexes.usernameCol != -1 && normalizedUsername != null) {
+        void add(Row row, HeaderIndexes indexes) {
+            if (indexes.usernameCol != -1) {
                 Cell usernameCell = row.getCell(indexes.usernameCol);
                 if (usernameCell != null && usernameCell.getCellType() == CellType.STRING) {
-                    String cellValue = usernameCell.getStringCellValue().trim().toLowerCase();
-                    if (cellValue.equals(normalizedUsername)) {
-                        return rowNum;
-                    }
+                    byUsername.putIfAbsent(usernameCell.getStringCellValue().trim().toLowerCase(), row.getRowNum());
                 }
             }
 
-            if (indexes.chatIdCol != -1 && chatId != null) {
+            if (indexes.chatIdCol != -1) {
                 Cell chatCell = row.getCell(indexes.chatIdCol);
                 if (chatCell != null) {
-                    if (chatCell.getCellType() == CellType.NUMERIC && (long) chatCell.getNumericCellValue() == chatId) {
-                        return rowNum;
+                    if (chatCell.getCellType() == CellType.NUMERIC) {
+                        byChatId.putIfAbsent((long) chatCell.getNumericCellValue(), row.getRowNum());
                     } else if (chatCell.getCellType() == CellType.STRING) {
                         try {
-                            if (Long.parseLong(chatCell.getStringCellValue().trim()) == chatId) {
-                                return rowNum;
-                            }
+                            byChatId.putIfAbsent(Long.parseLong(chatCell.getStringCellValue().trim()), row.getRowNum());
                         } catch (NumberFormatException ignored) {}
                     }
                 }
             }
         }
-        return -1;
+
+        int find(User user) {
+            Integer byName = user.getUsername() == null ? null : byUsername.get(user.getUsername().trim().toLowerCase());
+            Integer byChat = user.getChatId() == null ? null : byChatId.get(user.getChatId());
+            if (byName == null) return byChat == null ? -1 : byChat;
+            if (byChat == null) return byName;
+            return Math.min(byName, byChat);
+        }
     }
 
     private static HeaderIndexes resolveHeaders(Row headerRow) {
@@ -248,19 +352,17 @@ public class ExcelReader {
         for (int i = 0; i < headerRow.getLastCellNum(); i++) {
             Cell cell = headerRow.getCell(i);
             if (cell != null) {
-                String header = cell.getStringCellValue().trim().toLowerCase();
-                switch (header) {
-                    case "username" -> indexes.usernameCol = i;
-                    case "gender" -> indexes.genderCol = i;
-                    case "lastname" -> indexes.lastnameCol = i;
-                    case "chat_id" -> indexes.chatIdCol = i;
-                }
+                indexes.assign(i, cell.getStringCellValue());
             }
         }
         return indexes;
     }
 
-    private static class HeaderIndexes {
+    /**
+     * ایندکس ستون‌های شناخته‌شده در سطر هدر (-1 یعنی ستون وجود ندارد)
+     * در خواندن استریمی (StreamingUserReader) هم استفاده می‌شود
+     */
+    static class HeaderIndexes {
         int usernameCol = -1;
         int genderCol = -1;
         int lastnameCol = -1;
@@ -274,6 +376,18 @@ public class ExcelReader {
             this.lastnameCol = lastnameCol;
             this.chatIdCol = chatIdCol;
         }
+
+        /**
+         * ثبت ستون column اگر عنوان آن یکی از ستون‌های شناخته‌شده باشد
+         */
+        void assign(int column, String header) {
+            switch (header.trim().toLowerCase()) {
+                case "username" -> usernameCol = column;
+                case "gender" -> genderCol = column;
+                case "lastname" -> lastnameCol = column;
+                case "chat_id" -> chatIdCol = column;
+            }
+        }
     }
 
     /**
@@ -0,0 +1,559 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * سرور جعلی Bot API تلگرام برای تست و اندازه‌گیری بدون توکن واقعی و بدون اینترنت
+ * متدهای getUpdates (با Long Polling)، sendMessage، editMessageText، sendPhoto و sendMediaGroup (و setWebhook/deleteWebhook) پیاده‌سازی شده‌اند.
+ * آپدیت‌ها با sendUpdate به صف اضافه می‌شوند و هر ارسال ربات به Listener گزارش می‌شود.
+ *
+ * روی متدهای ارسال می‌توان خطا تزریق کرد (Faults): تأخیر، پاسخ 429 با retry_after، پاسخ 5xx و قطع اتصال بدون پاسخ،
+ * به صورت تصادفی یا با یک سناریوی ترتیبی (مثلاً قطعی تلگرام و سپس 429 یا timeout برای درخواست آزمایشی قطع‌کننده مدار).
+ * getUpdates خطا نمی‌گیرد تا حلقه polling (که بعد از خطا 5 ثانیه صبر می‌کند) نتیجه اندازه‌گیری را خراب نکند.
+ * برای اتصال ربات: -Dtelegram.apiBaseUrl=http://localhost:PORT
+ */
+public class FakeTelegramServer {
+
+    private static final int MAX_UPDATES_PER_RESPONSE = 100;
+
+    /**
+     * خطاهای تزریقی روی متدهای ارسال
+     * @param latencyMillis تأخیر ثابت هر پاسخ
+     * @param jitterMillis تأخیر تصادفی اضافه (0 تا این مقدار)
+     * @param throttleRate احتمال پاسخ 429 (0 تا 1)
+     * @param retryAfterSeconds مقدار retry_after در پاسخ 429
+     * @param errorRate احتمال پاسخ 502
+     * @param dropRate احتمال بستن اتصال بدون پاسخ
+     * @param script نتیجه اولین درخواست‌های ارسال به ترتیب (قبل از خطاهای تصادفی):
+     *               ok، 429، 502، drop (قطع اتصال) یا hang (بدون پاسخ تا hangMillis؛ برای timeout کلاینت)
+     * @param hangMillis مدت انتظار در حالت hang
+     */
+    public record Faults(long latencyMillis, long jitterMillis, double throttleRate, int retryAfterSeconds,
+                         double errorRate, double dropRate, List<String> script, long hangMillis) {
+
+        public static Faults none() {
+            return new Faults(0, 0, 0, 1, 0, 0, List.of(), 0);
+        }
+
+        /**
+         * خواندن از System property ها: fake.latencyMillis، fake.jitterMillis، fake.throttlePercent،
+         * fake.retryAfterSeconds، fake.errorPercent، fake.dropPercent،
+         * fake.script (مثلاً "502*5,429" یعنی 5 پاسخ 502 و سپس یک 429) و fake.hangMillis (پیش‌فرض 5000)
+         */
+        public static Faults fromSystemProperties() {
+            return new Faults(
+                    Long.getLong("fake.latencyMillis", 0),
+                    Long.getLong("fake.jitterMillis", 0),
+                    Double.parseDouble(System.getProperty("fake.throttlePercent", "0")) / 100,
+                    Integer.getInteger("fake.retryAfterSeconds", 1),
+                    Double.parseDouble(System.getProperty("fake.errorPercent", "0")) / 100,
+                    Double.parseDouble(System.getProperty("fake.dropPercent", "0")) / 100,
+                    parseScript(System.getProperty("fake.script", "")),
+                    Long.getLong("fake.hangMillis", 5000));
+        }
+
+        private static List<String> parseScript(String script) {
+            List<String> outcomes = new ArrayList<>();
+            for (String item : script.split(",")) {
+                item = item.trim();
+                if (item.isEmpty()) continue;
+                int star = item.indexOf('*');
+                int count = star < 0 ? 1 : Integer.parseInt(item.substring(star + 1));
+                String outcome = star < 0 ? item : item.substring(0, star);
+                if (!Set.of("ok", "429", "502", "drop", "hang").contains(outcome)) {
+                    throw new IllegalArgumentException("نتیجه نامعتبر در fake.script: " + outcome);
+                }
+                for (int i = 0; i < count; i++) {
+                    outcomes.add(outcome);
+                }
+            }
+            return List.copyOf(outcomes);
+        }
+    }
+
+    /**
+     * گزارش هر ارسال موفق ربات
+     */
+    @FunctionalInterface
+    public interface Listener {
+        /**
+         * @param method نام متد (sendMessage، sendPhoto، ...)
+         * @param text متن پیام (برای عکس‌ها null)
+         */
+        void onSend(long chatId, String method, String text);
+    }
+
+    private final HttpServer server;
+    private final Faults faults;
+    // باقی‌مانده سناریوی ترتیبی خطاها
+    private final Queue<String> script;
+
+    // صف آپدیت‌هایی که ربات هنوز تأیید (offset) نکرده است؛ با قفل this
+    private final ArrayDeque<JSONObject> updates = new ArrayDeque<>();
+    private long nextUpdateId = 1;
+
+    private final AtomicLong nextMessageId = new AtomicLong(1);
+    private final AtomicLong nextFileId = new AtomicLong(1);
+    private final Set<String> issuedFileIds = ConcurrentHashMap.newKeySet();
+    // متن پیام‌های متنی ارسال‌شده (message_id -> پیام) برای editMessageText
+    private record SentText(long chatId, String text) {}
+    private final Map<Long, SentText> sentTexts = new ConcurrentHashMap<>();
+    private volatile Listener listener = (chatId, method, text) -> {};
+
+    private final Map<String, LongAdder> calls = new ConcurrentHashMap<>();
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder uploadedBytes = new LongAdder();
+
+    /**
+     * @param port پورت سرور (0 یعنی یک پورت آزاد دلخواه)
+     */
+    public FakeTelegramServer(int port, Faults faults) throws IOException {
+        this.faults = faults;
+        this.script = new ConcurrentLinkedQueue<>(faults.script());
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/", this::handle);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * آدرس پایه برای telegram.apiBaseUrl
+     */
+    public String baseUrl() {
+        return "http://localhost:" + port();
+    }
+
+    public void onSend(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * اضافه کردن پیام متنی یک کاربر به صف آپدیت‌ها (مثل اینکه کاربر آن را در تلگرام فرستاده باشد)
+     * @return update_id
+     */
+    public synchronized long sendUpdate(long chatId, String username, String firstName, String text) {
+        JSONObject chat = new JSONObject()
+                .put("id", chatId)
+                .put("type", chatId < 0 ? "group" : "private")
+                .put("first_name", firstName);
+        if (username != null) {
+            chat.put("username", username);
+        }
+        JSONObject message = new JSONObject()
+                .put("message_id", nextMessageId.getAndIncrement())
+                .put("from", new JSONObject().put("id", chatId).put("is_bot", false).put("first_name", firstName))
+                .put("chat", chat)
+                .put("date", System.currentTimeMillis() / 1000)
+                .put("text", text);
+        long updateId = nextUpdateId++;
+        updates.add(new JSONObject().put("update_id", updateId).put("message", message));
+        notifyAll();
+        return updateId;
+    }
+
+    /**
+     * تعداد فراخوانی‌های یک متد
+     */
+    public long calls(String method) {
+        LongAdder count = calls.get(method);
+        return count == null ? 0 : count.sum();
+    }
+
+    /**
+     * خلاصه فراخوانی‌ها و خطاهای تزریق‌شده
+     */
+    public String stats() {
+        StringBuilder out = new StringBuilder();
+        new TreeMap<>(calls).forEach((method, count) -> out.append(method).append('=').append(count.sum()).append(' '));
+        return out + "| 429=" + throttled.sum() + " 5xx=" + errors.sum() + " drop=" + dropped.sum()
+                + " | upload=" + uploadedBytes.sum() / 1024 + " KB";
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String path = exchange.getRequestURI().getPath();
+            String method = path.substring(path.lastIndexOf('/') + 1);
+            if (!path.startsWith("/bot") || method.isEmpty()) {
+                respond(exchange, 404, error(404, "Not Found"));
+                return;
+            }
+            calls.computeIfAbsent(method, m -> new LongAdder()).increment();
+
+            byte[] body;
+            try (InputStream in = exchange.getRequestBody()) {
+                body = in.readAllBytes();
+            }
+            Request request = Request.parse(exchange, body);
+
+            switch (method) {
+                case "getUpdates" -> respond(exchange, 200, getUpdates(request));
+                case "setWebhook", "deleteWebhook" -> respond(exchange, 200, new JSONObject().put("ok", true).put("result", true));
+                case "sendMessage", "editMessageText", "sendPhoto", "sendMediaGroup" -> {
+                    if (injectFault(exchange)) return;
+                    JSONObject response = switch (method) {
+                        case "sendMessage" -> sendMessage(request);
+                        case "editMessageText" -> editMessageText(request);
+                        case "sendPhoto" -> sendPhoto(request);
+                        default -> sendMediaGroup(request);
+                    };
+                    respond(exchange, response.getBoolean("ok") ? 200 : response.getInt("error_code"), response);
+                }
+                default -> respond(exchange, 404, error(404, "Not Found: method not found"));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * getUpdates با Long Polling: آپدیت‌های قبل از offset حذف می‌شوند و اگر آپدیتی نباشد تا timeout ثانیه صبر می‌شود
+     */
+    private JSONObject getUpdates(Request request) throws InterruptedException {
+        long offset = request.longParam("offset", 0);
+        long deadline = System.currentTimeMillis() + request.longParam("timeout", 0) * 1000;
+
+        JSONArray result = new JSONArray();
+        synchronized (this) {
+            while (!updates.isEmpty() && updates.peekFirst().getLong("update_id") < offset) {
+                updates.pollFirst();
+            }
+            long remaining;
+            while (updates.isEmpty() && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                wait(remaining);
+            }
+            for (JSONObject update : updates) {
+                if (result.length() == MAX_UPDATES_PER_RESPONSE) break;
+                result.put(update);
+            }
+        }
+        return new JSONObject().put("ok", true).put("result", result);
+    }
+
+    private JSONObject sendMessage(Request request) {
+        Long chatId = request.chatId();
+        if (chatId == null) return error(400, "Bad Request: chat_id is empty");
+        String text = request.fields.get("text");
+        if (text == null || text.isEmpty()) return error(400, "Bad Request: message text is empty");
+
+        listener.onSend(chatId, "sendMessage", text);
+        JSONObject message = message(chatId).put("text", text);
+        sentTexts.put(message.getLong("message_id"), new SentText(chatId, text));
+        return ok(message);
+    }
+
+    /**
+     * editMessageText مثل تلگرام: پیام باید متعلق به همان چت باشد و متن جدید با متن فعلی فرق کند
+     */
+    private JSONObject editMessageText(Request request) {
+        Long chatId = request.chatId();
+        if (chatId == null) return error(400, "Bad Request: chat_id is empty");
+        String text = request.fields.get("text");
+        if (text == null || text.isEmpty()) return error(400, "Bad Request: message text is empty");
+
+        long messageId = request.longParam("message_id", 0);
+        SentText current = sentTexts.get(messageId);
+        if (current == null || current.chatId() != chatId) return error(400, "Bad Request: message to edit not found");
+        if (current.text().equals(text)) {
+            return error(400, "Bad Request: message is not modified: specified new message content and reply markup are exactly the same as a current content and reply markup of the message");
+        }
+
+        sentTexts.put(messageId, new SentText(chatId, text));
+        listener.onSend(chatId, "editMessageText", text);
+        return ok(new JSONObject()
+                .put("message_id", messageId)
+                .put("chat", new JSONObject().put("id", chatId))
+                .put("date", System.currentTimeMillis() / 1000)
+                .put("edit_date", System.currentTimeMillis() / 1000)
+                .put("text", text));
+    }
+
+    private JSONObject sendPhoto(Request request) {
+        Long chatId = request.chatId();
+        if (chatId == null) return error(400, "Bad Request: chat_id is empty");
+
+        JSONArray sizes;
+        if (request.files.containsKey("photo")) {
+            sizes = upload(request.files.get("photo"));
+        } else if (issuedFileIds.contains(request.fields.getOrDefault("photo", ""))) {
+            sizes = photoSizes(request.fields.get("photo"), 0);
+        } else {
+            return error(400, "Bad Request: wrong file identifier/HTTP URL specified");
+        }
+
+        listener.onSend(chatId, "sendPhoto", null);
+        return ok(message(chatId).put("photo", sizes));
+    }
+
+    private JSONObject sendMediaGroup(Request request) {
+        Long chatId = request.chatId();
+        if (chatId == null) return error(400, "Bad Request: chat_id is empty");
+        JSONArray media;
+        try {
+            media = new JSONArray(request.fields.getOrDefault("media", ""));
+        } catch (Exception e) {
+            return error(400, "Bad Request: can't parse media JSON object");
+        }
+        if (media.length() < 2 || media.length() > 10) {
+            return error(400, "Bad Request: wrong number of messages specified");
+        }
+
+        // اول همه موارد بررسی می‌شوند تا آلبوم یا کامل ارسال شود یا اصلاً ارسال نشود
+        JSONArray[] sizes = new JSONArray[media.length()];
+        for (int i = 0; i < media.length(); i++) {
+            String ref = media.getJSONObject(i).optString("media", "");
+            if (ref.startsWith("attach://")) {
+                Integer length = request.files.get(ref.substring("attach://".length()));
+                if (length == null) return error(400, "Bad Request: failed to send message #" + (i + 1) + " with the error message \"Wrong file identifier/HTTP URL specified\"");
+                sizes[i] = upload(length);
+            } else if (issuedFileIds.contains(ref)) {
+                sizes[i] = photoSizes(ref, 0);
+            } else {
+                return error(400, "Bad Request: failed to send message #" + (i + 1) + " with the error message \"Wrong file identifier/HTTP URL specified\"");
+            }
+        }
+
+        JSONArray messages = new JSONArray();
+        for (JSONArray photo : sizes) {
+            listener.onSend(chatId, "sendMediaGroup", null);
+            messages.put(message(chatId).put("photo", photo));
+        }
+        return ok(messages);
+    }
+
+    /**
+     * تزریق خطا قبل از پردازش یک متد ارسال
+     * @return true اگر پاسخ (یا قطع اتصال) انجام شد و نباید ادامه داد
+     */
+    private boolean injectFault(HttpExchange exchange) throws IOException, InterruptedException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long delay = faults.latencyMillis() + (faults.jitterMillis() > 0 ? random.nextLong(faults.jitterMillis() + 1) : 0);
+        if (delay > 0) {
+            Thread.sleep(delay);
+        }
+
+        String scripted = script.poll();
+        if (scripted != null) {
+            switch (scripted) {
+                case "ok" -> { return false; }
+                case "hang" -> {
+                    // کلاینت قبل از پاسخ timeout می‌شود
+                    dropped.increment();
+                    Thread.sleep(faults.hangMillis());
+                    exchange.getResponseBody().close();
+                }
+                case "drop" -> {
+                    dropped.increment();
+                    exchange.getResponseBody().close();
+                }
+                case "429" -> throttle(exchange);
+                default -> {
+                    errors.increment();
+                    respond(exchange, 502, error(502, "Bad Gateway"));
+                }
+            }
+            return true;
+        }
+
+        double roll = random.nextDouble();
+        if (roll < faults.dropRate()) {
+            // بستن اتصال بدون هیچ پاسخی
+            dropped.increment();
+            exchange.getResponseBody().close();
+            return true;
+        }
+        roll -= faults.dropRate();
+        if (roll < faults.throttleRate()) {
+            throttle(exchange);
+            return true;
+        }
+        roll -= faults.throttleRate();
+        if (roll < faults.errorRate()) {
+            errors.increment();
+            respond(exchange, 502, error(502, "Bad Gateway"));
+            return true;
+        }
+        return false;
+    }
+
+    private void throttle(HttpExchange exchange) throws IOException {
+        throttled.increment();
+        respond(exchange, 429, error(429, "Too Many Requests: retry after " + faults.retryAfterSeconds())
+                .put("parameters", new JSONObject().put("retry_after", faults.retryAfterSeconds())));
+    }
+
+    private JSONArray upload(int bytes) {
+        uploadedBytes.add(bytes);
+        String fileId = "fake-" + nextFileId.getAndIncrement();
+        issuedFileIds.add(fileId);
+        return photoSizes(fileId, bytes);
+    }
+
+    /**
+     * اندازه‌های عکس مثل پاسخ تلگرام: نسخه کوچک اول و نسخه اصلی آخر
+     */
+    private static JSONArray photoSizes(String fileId, int bytes) {
+        return new JSONArray()
+                .put(new JSONObject().put("file_id", fileId + "-thumb").put("width", 90).put("height", 90).put("file_size", Math.min(bytes, 1024)))
+                .put(new JSONObject().put("file_id", fileId).put("width", 1280).put("height", 1280).put("file_size", bytes));
+    }
+
+    private JSONObject message(long chatId) {
+        return new JSONObject()
+                .put("message_id", nextMessageId.getAndIncrement())
+                .put("chat", new JSONObject().put("id", chatId))
+                .put("date", System.currentTimeMillis() / 1000);
+    }
+
+    private static JSONObject ok(Object result) {
+        return new JSONObject().put("ok", true).put("result", result);
+    }
+
+    private static JSONObject error(int code, String description) {
+        return new JSONObject().put("ok", false).put("error_code", code).put("description", description);
+    }
+
+    private static void respond(HttpExchange exchange, int status, JSONObject json) throws IOException {
+        byte[] body = json.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * پارامترهای یک درخواست: query string، فرم urlencoded یا multipart/form-data
+     * از فایل‌های multipart فقط طول آن‌ها نگه داشته می‌شود
+     */
+    private static class Request {
+        final Map<String, String> fields = new HashMap<>();
+        final Map<String, Integer> files = new HashMap<>();
+
+        static Request parse(HttpExchange exchange, byte[] body) {
+            Request request = new Request();
+            request.parseUrlEncoded(exchange.getRequestURI().getRawQuery());
+
+            String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+            if (contentType == null) return request;
+            if (contentType.startsWith("application/x-www-form-urlencoded")) {
+                request.parseUrlEncoded(new String(body, StandardCharsets.UTF_8));
+            } else if (contentType.startsWith("multipart/form-data")) {
+                int index = contentType.indexOf("boundary=");
+                if (index != -1) {
+                    request.parseMultipart(body, contentType.substring(index + "boundary=".length()).replace("\"", ""));
+                }
+            }
+            return request;
+        }
+
+        Long chatId() {
+            try {
+                return Long.parseLong(fields.get("chat_id"));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        long longParam(String name, long defaultValue) {
+            try {
+                return Long.parseLong(fields.get(name));
+            } catch (NumberFormatException e) {
+                return defaultValue;
+            }
+        }
+
+        private void parseUrlEncoded(String data) {
+            if (data == null || data.isEmpty()) return;
+            for (String pair : data.split("&")) {
+                int eq = pair.indexOf('=');
+                if (eq == -1) continue;
+                fields.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+
+        private void parseMultipart(byte[] body, String boundary) {
+            byte[] delimiter = ("--" + boundary).getBytes(StandardCharsets.UTF_8);
+            byte[] headerEnd = "\r\n\r\n".getBytes(StandardCharsets.UTF_8);
+
+            int start = indexOf(body, delimiter, 0);
+            while (start != -1) {
+                int headersStart = start + delimiter.length + 2; // بعد از CRLF
+                int next = indexOf(body, delimiter, headersStart);
+                if (next == -1) break;
+                int headersEnd = indexOf(body, headerEnd, headersStart);
+                if (headersEnd == -1 || headersEnd > next) break;
+
+                String headers = new String(body, headersStart, headersEnd - headersStart, StandardCharsets.UTF_8);
+                int contentStart = headersEnd + headerEnd.length;
+                int contentLength = next - 2 - contentStart; // بدون CRLF قبل از delimiter بعدی
+                String name = attribute(headers, "name");
+                if (name != null && contentLength >= 0) {
+                    if (attribute(headers, "filename") != null) {
+                        files.put(name, contentLength);
+                    } else {
+                        fields.put(name, new String(body, contentStart, contentLength, StandardCharsets.UTF_8));
+                    }
+                }
+                start = next;
+            }
+        }
+
+        private static String attribute(String headers, String name) {
+            String key = " " + name + "=\"";
+            int index = headers.indexOf(key);
+            if (index == -1) return null;
+            int valueStart = headers.indexOf('"', index) + 1;
+            int valueEnd = headers.indexOf('"', valueStart);
+            return valueEnd == -1 ? null : headers.substring(valueStart, valueEnd);
+        }
+
+        private static int indexOf(byte[] data, byte[] pattern, int from) {
+            outer:
+            for (int i = from; i <= data.length - pattern.length; i++) {
+                for (int j = 0; j < pattern.length; j++) {
+                    if (data[i + j] != pattern[j]) continue outer;
+                }
+                return i;
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,257 @@
+import org.apache.logging.log4j.Logger;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * کش file_id تلگرام برای عکس‌ها
+ * کلید کش هش SHA-256 محتوای فایل است؛ بنابراین اگر فایلی در پوشه تغییر کند هش آن عوض می‌شود
+ * و به صورت خودکار دوباره آپلود می‌شود. کش روی دیسک ذخیره می‌شود تا بعد از راه‌اندازی مجدد هم معتبر باشد.
+ *
+ * هش فایل‌ها بیرون از قفل کش محاسبه می‌شود تا خواندن یک فایل بزرگ بقیه ارسال‌ها را معطل نکند.
+ * ذخیره روی دیسک با تأخیر و روی thread جداگانه انجام می‌شود: تغییرات یک ثانیه جمع و یکجا نوشته می‌شوند
+ * (نه یک بار نوشتن کل فایل برای هر آپلود)؛ هنگام خروج flush() تغییرات باقی‌مانده را می‌نویسد.
+ */
+public class FileIdCache {
+
+    private static final Logger LOG = AsyncLogging.logger("photos");
+
+    private static final int DEFAULT_MAX_ENTRIES = 10_000;
+    private static final long DEFAULT_MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(30);
+    private static final long SAVE_DELAY_MILLIS = 1000;
+
+    private final Path storePath;
+    private final int maxEntries;
+    private final long maxAgeMillis;
+
+    // هش محتوا -> file_id (با قفل this)
+    private final Map<String, Entry> entries = new HashMap<>();
+    private boolean saveScheduled;
+
+    // مسیر فایل -> اثر انگشت (اندازه + زمان تغییر) تا برای هر ارسال دوباره هش محاسبه نشود
+    // مشترک بین همه کش‌ها و PhotoOptimizer تا هر عکس فقط یک بار خوانده شود
+    private static final Map<String, Fingerprint> FINGERPRINTS = new ConcurrentHashMap<>();
+
+    // نوشتن فایل کش (فقط یک نوشتن در هر لحظه، به ترتیب)
+    private final ScheduledExecutorService saver = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "file-id-cache-save");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private static class Entry {
+        final String fileId;
+        final long createdAt;
+        long lastUsed;
+
+        Entry(String fileId, long createdAt, long lastUsed) {
+            this.fileId = fileId;
+            this.createdAt = createdAt;
+            this.lastUsed = lastUsed;
+        }
+    }
+
+    private record Fingerprint(long size, long lastModified, String hash) {}
+
+    public FileIdCache(String storePath) {
+        this(storePath, DEFAULT_MAX_ENTRIES, DEFAULT_MAX_AGE_MILLIS);
+    }
+
+    /**
+     * @param storePath مسیر فایل ذخیره کش
+     * @param maxEntries حداکثر تعداد file_id نگهداری‌شده
+     * @param maxAgeMillis حداکثر عمر هر file_id
+     */
+    public FileIdCache(String storePath, int maxEntries, long maxAgeMillis) {
+        this.storePath = Path.of(storePath);
+        this.maxEntries = maxEntries;
+        this.maxAgeMillis = maxAgeMillis;
+        load();
+    }
+
+    /**
+     * پیدا کردن file_id ذخیره‌شده برای یک فایل
+     * @return file_id یا null اگر فایل قبلاً آپلود نشده یا محتوای آن تغییر کرده باشد
+     */
+    public String get(File file) throws IOException {
+        String hash = hashOf(file);
+        synchronized (this) {
+            Entry entry = entries.get(hash);
+            if (entry == null) return null;
+
+            long now = System.currentTimeMillis();
+            if (now - entry.createdAt > maxAgeMillis) {
+                entries.remove(hash);
+                scheduleSave();
+                return null;
+            }
+            entry.lastUsed = now;
+            return entry.fileId;
+        }
+    }
+
+    /**
+     * ذخیره file_id برگشتی از تلگرام پس از آپلود موفق
+     */
+    public void put(File file, String fileId) throws IOException {
+        String hash = hashOf(file);
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            entries.put(hash, new Entry(fileId, now, now));
+            evict(now);
+            scheduleSave();
+        }
+    }
+
+    /**
+     * حذف file_id یک فایل (مثلاً وقتی تلگرام آن را رد کرد)
+     */
+    public void invalidate(File file) throws IOException {
+        String hash = hashOf(file);
+        synchronized (this) {
+            if (entries.remove(hash) != null) {
+                scheduleSave();
+            }
+        }
+    }
+
+    /**
+     * نوشتن فوری تغییرات ذخیره‌نشده روی دیسک (مثلاً هنگام خروج)
+     */
+    public void flush() {
+        try {
+            saver.submit(this::save).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | RejectedExecutionException e) {
+            LOG.warn("⚠️ خطا در ذخیره کش file_id: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * محاسبه هش SHA-256 محتوای فایل
+     * اگر اندازه و زمان تغییر فایل عوض نشده باشد، هش قبلی استفاده می‌شود
+     */
+    public static String hashOf(File file) throws IOException {
+        String key = file.getAbsolutePath();
+        long size = file.length();
+        long lastModified = file.lastModified();
+
+        Fingerprint fingerprint = FINGERPRINTS.get(key);
+        if (fingerprint != null && fingerprint.size() == size && fingerprint.lastModified() == lastModified) {
+            return fingerprint.hash();
+        }
+
+        String hash = sha256(file);
+        FINGERPRINTS.put(key, new Fingerprint(size, lastModified, hash));
+        return hash;
+    }
+
+    /**
+     * هش SHA-256 محتوای فایل به صورت hex
+     */
+    static String sha256(File file) throws IOException {
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * حذف موارد منقضی‌شده و در صورت پر بودن کش، مواردی که مدت بیشتری استفاده نشده‌اند
+     */
+    private void evict(long now) {
+        entries.values().removeIf(e -> now - e.createdAt > maxAgeMillis);
+        while (entries.size() > maxEntries) {
+            String oldest = null;
+            long oldestUse = Long.MAX_VALUE;
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                if (e.getValue().lastUsed < oldestUse) {
+                    oldestUse = e.getValue().lastUsed;
+                    oldest = e.getKey();
+                }
+            }
+            entries.remove(oldest);
+        }
+    }
+
+    private void load() {
+        if (!Files.exists(storePath)) return;
+        try {
+            JSONObject json = new JSONObject(Files.readString(storePath, StandardCharsets.UTF_8));
+            for (String hash : json.keySet()) {
+                JSONObject e = json.getJSONObject(hash);
+                entries.put(hash, new Entry(e.getString("file_id"), e.getLong("created"), e.optLong("used", e.getLong("created"))));
+            }
+            evict(System.currentTimeMillis());
+            LOG.info("🗂️ {} file_id از کش بارگذاری شد.", entries.size());
+        } catch (Exception e) {
+            LOG.warn("⚠️ خطا در خواندن کش file_id: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * زمان‌بندی یک ذخیره با تأخیر (تغییرات بعدی تا آن زمان در همان ذخیره نوشته می‌شوند)
+     * باید با قفل this صدا زده شود
+     */
+    private void scheduleSave() {
+        if (saveScheduled) return;
+        saveScheduled = true;
+        saver.schedule(() -> {
+            try {
+                save();
+            } catch (IOException | RuntimeException e) {
+                LOG.warn("⚠️ خطا در ذخیره کش file_id: {}", e.getMessage());
+            }
+        }, SAVE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * ذخیره اتمیک کش روی thread ذخیره: ابتدا در فایل موقت نوشته و سپس جایگزین می‌شود
+     * فقط ساختن JSON با قفل انجام می‌شود و نوشتن فایل بیرون از قفل
+     */
+    private Void save() throws IOException {
+        String content;
+        synchronized (this) {
+            if (!saveScheduled) return null;
+            saveScheduled = false;
+            JSONObject json = new JSONObject();
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                json.put(e.getKey(), new JSONObject()
+                        .put("file_id", e.getValue().fileId)
+                        .put("created", e.getValue().createdAt)
+                        .put("used", e.getValue().lastUsed));
+            }
+            content = json.toString();
+        }
+        Path absolute = storePath.toAbsolutePath();
+        Path tmp = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+        Files.writeString(tmp, content, StandardCharsets.UTF_8);
+        Files.move(tmp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return null;
+    }
+}
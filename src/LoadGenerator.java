@@ -0,0 +1,129 @@
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * تست بار سرتاسری ربات با FakeTelegramServer (بدون توکن واقعی و بدون اینترنت)
+ * ربات کامل (Main) به سرور جعلی وصل می‌شود و هزاران چت /start یا /send می‌فرستند؛
+ * زمان از ارسال دستور تا رسیدن آخرین پاسخ ربات (راهنمای /start یا پیام پایان /send) برای هر چت اندازه‌گیری می‌شود.
+ *
+ * ربات فایل‌های user2.xlsx، users.db/، bot-state/، photo-cache/ و file_ids.json را در پوشه جاری می‌سازد؛ پس آن را در یک پوشه خالی اجرا کنید:
+ * mkdir load && cd load && java -Dload.chats=2000 -cp "../bin;../lib/*" LoadGenerator
+ *
+ * تنظیمات: load.chats (پیش‌فرض 2000)، load.sendPercent (درصد چت‌هایی که /send می‌فرستند، پیش‌فرض 5)،
+ * load.updatesPerSecond (0 یعنی همه یکجا)، load.photos (تعداد عکس نمونه در fol/ اگر پوشه وجود نداشته باشد، پیش‌فرض 6)،
+ * load.timeoutSeconds (پیش‌فرض 300) و خطاهای سرور جعلی (FakeTelegramServer.Faults.fromSystemProperties)
+ */
+public class LoadGenerator {
+
+    private static final long FIRST_CHAT_ID = 1_000_000;
+
+    public static void main(String[] args) throws Exception {
+        for (String stateFile : new String[]{"user2.xlsx", "users.db", "file_ids.json", "bot-state", "photo-cache"}) {
+            if (new File(stateFile).exists()) {
+                System.out.println("❌ " + stateFile + " در پوشه جاری وجود دارد؛ تست بار را در یک پوشه خالی اجرا کنید تا داده‌های واقعی تغییر نکنند.");
+                System.exit(2);
+            }
+        }
+
+        int chats = Integer.getInteger("load.chats", 2000);
+        int sendPercent = Integer.getInteger("load.sendPercent", 5);
+        int updatesPerSecond = Integer.getInteger("load.updatesPerSecond", 0);
+        long timeoutSeconds = Long.getLong("load.timeoutSeconds", 300);
+        createSamplePhotos(new File("fol"), Integer.getInteger("load.photos", 6));
+
+        FakeTelegramServer server = new FakeTelegramServer(0, FakeTelegramServer.Faults.fromSystemProperties());
+        server.start();
+
+        // ربات باید قبل از بارگذاری کلاس‌های Main و TelegramClient به سرور جعلی اشاره کند
+        System.setProperty("telegram.apiBaseUrl", server.baseUrl());
+        System.setProperty("bot.token", "0:load-test");
+        System.setProperty("bot.mode", "polling");
+        if (System.getProperty("bot.metrics.port") == null) {
+            System.setProperty("bot.metrics.port", "-1");
+        }
+
+        Metrics.Histogram startLatency = new Metrics.Histogram();
+        Metrics.Histogram sendLatency = new Metrics.Histogram();
+        Map<Long, Long> startedAt = new ConcurrentHashMap<>();
+        CountDownLatch done = new CountDownLatch(chats);
+
+        server.onSend((chatId, method, text) -> {
+            if (text == null) return;
+            boolean finished = text.startsWith("👋") || text.startsWith("✅");
+            Long start = finished ? startedAt.remove(chatId) : null;
+            if (start != null) {
+                (text.startsWith("👋") ? startLatency : sendLatency).recordSince(start);
+                done.countDown();
+            }
+        });
+
+        Thread bot = Thread.ofPlatform().name("bot-main").daemon().start(() -> Main.main(new String[0]));
+
+        // صبر تا شروع Long Polling (اولین getUpdates مربوط به collectAllChatIds است)
+        while (server.calls("getUpdates") < 2 && bot.isAlive()) {
+            Thread.sleep(10);
+        }
+        System.out.println("🚦 ارسال " + chats + " دستور (" + sendPercent + "% /send) به " + server.baseUrl());
+
+        long start = System.nanoTime();
+        long intervalNanos = updatesPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / updatesPerSecond : 0;
+        for (int i = 0; i < chats; i++) {
+            long chatId = FIRST_CHAT_ID + i;
+            String command = i % 100 < sendPercent ? "/send" : "/start";
+            startedAt.put(chatId, System.nanoTime());
+            server.sendUpdate(chatId, "load_user_" + i, "User" + i, command);
+            if (intervalNanos > 0) {
+                LockSupport.parkNanos(start + (i + 1) * intervalNanos - System.nanoTime());
+            }
+        }
+
+        boolean completed = done.await(timeoutSeconds, TimeUnit.SECONDS);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long outbound = server.calls("sendMessage") + server.calls("editMessageText") + server.calls("sendPhoto") + server.calls("sendMediaGroup");
+
+        // لاگ‌های ربات (ناهمگام) قبل از گزارش چاپ شوند تا با آن قاطی نشوند
+        AsyncLogging.flush();
+        System.out.println();
+        System.out.println("🏁 نتیجه تست بار" + (completed ? "" : " (timeout: " + done.getCount() + " چت پاسخ کامل نگرفتند)"));
+        System.out.println("• چت‌ها: " + chats + " در " + String.format("%.1f", seconds) + " ثانیه ("
+                + String.format("%.1f", (chats - done.getCount()) / seconds) + " دستور در ثانیه)");
+        System.out.println("• درخواست‌های ارسال: " + outbound + " (" + String.format("%.1f", outbound / seconds) + " در ثانیه)");
+        System.out.println("• /start: " + latencyLine(startLatency));
+        System.out.println("• /send: " + latencyLine(sendLatency));
+        System.out.println("• سرور جعلی: " + server.stats());
+        System.out.println(Metrics.summary());
+        System.exit(completed ? 0 : 1);
+    }
+
+    private static String latencyLine(Metrics.Histogram histogram) {
+        return histogram.count() + " چت، p50 " + histogram.quantile(0.5) / 1_000_000 + " ms / p99 "
+                + histogram.quantile(0.99) / 1_000_000 + " ms";
+    }
+
+    /**
+     * ساخت عکس‌های نمونه 1.jpg تا count.jpg اگر پوشه عکس‌ها وجود نداشته باشد
+     */
+    private static void createSamplePhotos(File folder, int count) throws IOException {
+        if (folder.exists()) return;
+        folder.mkdirs();
+        for (int i = 1; i <= count; i++) {
+            BufferedImage image = new BufferedImage(320, 240, BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = image.createGraphics();
+            graphics.setColor(Color.getHSBColor(i / (float) count, 0.6f, 0.9f));
+            graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+            graphics.setColor(Color.BLACK);
+            graphics.drawString(Integer.toString(i), 150, 120);
+            graphics.dispose();
+            ImageIO.write(image, "jpg", new File(folder, i + ".jpg"));
+        }
+    }
+}
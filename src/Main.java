@@ -1,141 +1,360 @@
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URI;
-import java.net.URL;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import org.apache.logging.log4j.Logger;
 
-import org.json.JSONArray;
-import org.json.JSONObject;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
 
 /**
  * کلاس اصلی ربات تلگرام
  * این کلاس شامل حلقه اصلی polling و مدیریت دستورات است
  */
 public class Main {
-    // توکن ربات تلگرام - از BotFather دریافت می‌شود
-    static String botToken = "8529385580:AAFoIEqgNJvHgCNAvU-gxPSdU79DxZXTxwg";
+    // زمان شروع برنامه (برای اندازه‌گیری مراحل راه‌اندازی و زمان اولین پاسخ)
+    static final long BOOT_NANOS = System.nanoTime();
+
+    // لاگ‌های راه‌اندازی و polling، دستورات کاربران و ارسال‌های گروهی (سطح هر کدام با -Dbot.log.level.<نام> جداگانه تنظیم می‌شود)
+    static final Logger LOG = AsyncLogging.logger("main");
+    static final Logger COMMAND_LOG = AsyncLogging.logger("command");
+    static final Logger BROADCAST_LOG = AsyncLogging.logger("broadcast");
+
+    // توکن ربات تلگرام - از BotFather دریافت می‌شود (با -Dbot.token یا متغیر محیطی BOT_TOKEN قابل تغییر است)
+    static String botToken = System.getProperty("bot.token",
+            System.getenv().getOrDefault("BOT_TOKEN", "8529385580:AAFoIEqgNJvHgCNAvU-gxPSdU79DxZXTxwg"));
     
-    // ذخیره chat_id های شناخته شده برای ارسال اعلان آنلاین شدن
-    static Set<Long> knownChatIds = new HashSet<>();
+    // چت مدیر برای پیام پیشرفت ارسال‌های گروهی (با -Dbot.admin.chatId؛ اگر تنظیم نشود پیشرفت فقط در کنسول چاپ می‌شود)
+    static Long adminChatId = Long.getLong("bot.admin.chatId");
+
+    // offset آخرین آپدیت و chat_id های شناخته شده روی دیسک (پوشه با -Dbot.state.dir، پیش‌فرض bot-state)
+    static BotState botState = openBotState(System.getProperty("bot.state.dir", "bot-state"));
+
+    // chat_id های شناخته شده برای ارسال اعلان آنلاین شدن (همان مجموعه BotState؛ بدون Long و thread-safe)
+    // چت جدید فقط با botState.addChat اضافه می‌شود تا روی دیسک هم ثبت شود
+    static ConcurrentLongSet knownChatIds = botState.chats();
+
+    // صف پردازش دستورات: ترتیب هر چت حفظ می‌شود، حداکثر 1000 دستور در انتظار و 20 دستور برای هر چت
+    static UpdateDispatcher dispatcher = new UpdateDispatcher(1000, 20);
+
+    // پایگاه داده محلی کاربران با ایندکس chat_id و username (فایل اکسل فقط برای import/export)
+    static UserDatabase userDb = UserDatabase.shared();
+
+    // ثبت تأخیری کاربران جدید در فایل اکسل (به صورت دسته‌ای)
+    static UserWriteBehindStore userStore = new UserWriteBehindStore("user2.xlsx");
+
+    // اعلان آنلاین شدن در حال اجرا (در پس‌زمینه؛ هنگام خروج لغو می‌شود)
+    static volatile Broadcaster onlineBroadcast;
+
+    // مدت راه‌اندازی تا شروع دریافت دستورات و تا پایان اولین پاسخ (نانوثانیه از BOOT_NANOS، 0 یعنی هنوز نه)
+    static final AtomicLong readyNanos = new AtomicLong();
+    static final AtomicLong firstResponseNanos = new AtomicLong();
 
     public static void main(String[] args) {
-        System.out.println("🤖 ربات در حال راه‌اندازی...");
+        LOG.info("🤖 ربات در حال راه‌اندازی...");
         
-        // ابتدا همه chat_id های موجود را از آپدیت‌ها جمع‌آوری می‌کنیم
+        // ثبت کاربران باقی‌مانده در اکسل و بستن پایگاه داده هنگام خروج
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            cancelOnlineNotification();
+            // ارسال‌های منتظر نوبت به جای معطل کردن خروج رد می‌شوند
+            SendScheduler.global().close();
+            userStore.close();
+            MessagePhotoSender.flushFileIdCache();
+            try {
+                botState.close();
+                userDb.close();
+            } catch (IOException e) {
+                LOG.error("⚠️ خطا در بستن پایگاه داده: {}", e.getMessage());
+            }
+            // چاپ لاگ‌های صف‌شده قبل از پایان برنامه
+            AsyncLogging.flush();
+        }, "flush-on-exit"));
+        
+        long phase = System.nanoTime();
+        startMetricsServer();
+        phase = logPhase("سرور آمار", phase);
+
+        // چت‌های شناخته شده هنگام بارگذاری BotState از اجرای قبلی بازیابی شده‌اند
+        phase = logPhase("بازیابی وضعیت", phase);
+
+        // وارد کردن لیست اکسل در پایگاه داده در پس‌زمینه (chat_id های ثبت‌شده در اکسل قابل جستجو می‌شوند)
+        if (new File("user2.xlsx").exists()) {
+            Thread.ofVirtual().name("excel-import").start(Main::importUserExcel);
+        }
+        
+        // ابتدا همه chat_id های موجود را از آپدیت‌ها جمع‌آوری می‌کنیم (فقط در اولین اجرا)
         collectAllChatIds();
+        logPhase("جمع‌آوری کاربران", phase);
         
-        // اعلان آنلاین شدن ربات به همه کاربران شناخته شده
+        // اعلان آنلاین شدن ربات در پس‌زمینه؛ دریافت دستورات منتظر آن نمی‌ماند
         notifyBotOnline();
+
+        // آماده‌سازی عکس‌ها در پس‌زمینه تا اولین /send منتظر کوچک‌سازی آن‌ها نماند
+        PhotoOptimizer.shared().prewarm("fol");
         
-        // شروع polling برای دریافت دستورات
-        System.out.println("🔄 در حال گوش دادن به دستورات...");
-        startPolling();
+        // شروع دریافت دستورات: webhook اگر تنظیم شده باشد، وگرنه Long Polling
+        boolean webhook = startWebhook();
+        markReady();
+        if (!webhook) {
+            startPolling();
+        }
     }
-    
+
     /**
-     * جمع‌آوری همه chat_id های موجود از آپدیت‌ها
-     * این متد یکبار در شروع برنامه اجرا می‌شود
+     * وارد کردن user2.xlsx در پایگاه داده (فقط اگر از آخرین import تغییر کرده باشد)
+     * روی thread جداگانه اجرا می‌شود تا راه‌اندازی منتظر خواندن فایل بزرگ نماند
      */
-    public static void collectAllChatIds() {
+    private static void importUserExcel() {
+        long start = System.nanoTime();
         try {
-            String urlString = "https://api.telegram.org/bot" + botToken + "/getUpdates";
-            URL url = URI.create(urlString).toURL();
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("GET");
+            int changed = userDb.importExcelIfChanged("user2.xlsx");
+            if (changed < 0) {
+                LOG.info("📥 user2.xlsx از آخرین ورود تغییری نکرده است.");
+            } else {
+                LOG.info("📥 ورود اکسل: {} کاربر به‌روز شد ({} ms).", changed, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+        } catch (Exception e) {
+            LOG.warn("⚠️ خطا در ورود user2.xlsx: {}", e.getMessage());
+        }
+    }
 
-            BufferedReader in = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-            StringBuilder response = new StringBuilder();
-            String line;
+    /**
+     * چاپ مدت یک مرحله راه‌اندازی
+     * @return زمان پایان مرحله (شروع مرحله بعد)
+     */
+    private static long logPhase(String name, long startNanos) {
+        long now = System.nanoTime();
+        LOG.info("⏱️ {}: {} ms", name, TimeUnit.NANOSECONDS.toMillis(now - startNanos));
+        return now;
+    }
 
-            while ((line = in.readLine()) != null) {
-                response.append(line);
-            }
-            in.close();
+    /**
+     * ثبت زمان آماده شدن برای دریافت دستورات
+     */
+    private static void markReady() {
+        readyNanos.set(System.nanoTime() - BOOT_NANOS);
+        LOG.info("🔄 در حال گوش دادن به دستورات... (راه‌اندازی: {} ms)", TimeUnit.NANOSECONDS.toMillis(readyNanos.get()));
+    }
+
+    /**
+     * ثبت زمان پایان اولین دستور بعد از راه‌اندازی (فقط بار اول)
+     */
+    private static void markFirstResponse() {
+        if (firstResponseNanos.get() == 0 && firstResponseNanos.compareAndSet(0, System.nanoTime() - BOOT_NANOS)) {
+            LOG.info("⏱️ اولین پاسخ {} ms بعد از شروع برنامه", TimeUnit.NANOSECONDS.toMillis(firstResponseNanos.get()));
+        }
+    }
+    
+    /**
+     * راه‌اندازی سرور آمار (فرمت Prometheus) و ثبت مقادیر لحظه‌ای
+     * پورت با -Dbot.metrics.port (پیش‌فرض 9400) تنظیم می‌شود؛ مقدار منفی سرور را غیرفعال می‌کند
+     */
+    public static void startMetricsServer() {
+        Metrics.gauge("known_chats", () -> knownChatIds.size());
+        Metrics.gauge("known_chats_memory_bytes", () -> knownChatIds.memoryBytes());
+        Metrics.gauge("dispatcher_pending", () -> dispatcher.pending());
+        Metrics.gauge("users_db_size", () -> userDb.size());
+        Metrics.gauge("send_rate_per_second", () -> SendRateController.global().currentRate());
+        for (SendScheduler.Lane lane : SendScheduler.Lane.values()) {
+            Metrics.gauge("send_queue_" + lane.name().toLowerCase(), () -> SendScheduler.global().depth(lane));
+        }
+        Metrics.gauge("startup_seconds", () -> readyNanos.get() / 1e9);
+        Metrics.gauge("first_response_seconds", () -> firstResponseNanos.get() / 1e9);
 
-            JSONObject json = new JSONObject(response.toString());
-            JSONArray results = json.getJSONArray("result");
+        int port = Integer.getInteger("bot.metrics.port", 9400);
+        if (port < 0) return;
+        try {
+            new MetricsServer(port).start();
+        } catch (IOException e) {
+            LOG.warn("⚠️ راه‌اندازی سرور آمار ناموفق بود: {}", e.getMessage());
+        }
+    }
+
+    private static BotState openBotState(String directory) {
+        try {
+            return new BotState(directory);
+        } catch (IOException e) {
+            throw new IllegalStateException("باز کردن وضعیت ربات ناموفق بود: " + directory, e);
+        }
+    }
+
+    /**
+     * جمع‌آوری همه chat_id های موجود از آپدیت‌ها
+     * این متد یکبار در شروع برنامه اجرا می‌شود؛ اگر وضعیت ذخیره‌شده‌ای از اجرای قبلی وجود داشته باشد
+     * چت‌ها از همان بازیابی شده‌اند و آپدیت‌های قبلی دوباره خوانده نمی‌شوند
+     */
+    public static void collectAllChatIds() {
+        if (botState.lastUpdateId() > 0) {
+            LOG.info("✅ {} کاربر از وضعیت ذخیره‌شده بازیابی شد (ادامه از آپدیت {}).", knownChatIds.size(), botState.lastUpdateId() + 1);
+            return;
+        }
 
-            for (int i = 0; i < results.length(); i++) {
-                JSONObject update = results.getJSONObject(i);
-                if (update.has("message")) {
-                    JSONObject msg = update.getJSONObject("message");
-                    JSONObject chat = msg.getJSONObject("chat");
-                    knownChatIds.add(chat.getLong("id"));
+        try {
+            for (Update update : TelegramClient.forToken(botToken).getUpdates(0, 0).join()) {
+                if (update.hasMessage()) {
+                    botState.addChat(update.chatId());
+                    userDb.upsert(userFromChat(update));
                 }
             }
+            // offset تغییر نمی‌کند؛ این آپدیت‌ها هنوز در Long Polling پردازش می‌شوند
+            botState.commit(0);
             
-            System.out.println("✅ " + knownChatIds.size() + " کاربر شناسایی شد.");
+            LOG.info("✅ {} کاربر شناسایی شد.", knownChatIds.size());
 
         } catch (Exception e) {
-            e.printStackTrace();
+            LOG.error("خطا در بارگذاری کاربران اولیه", e);
         }
     }
     
     /**
      * اعلان آنلاین شدن ربات به همه کاربران
+     * ارسال‌ها در پس‌زمینه از طریق Broadcaster انجام می‌شوند و این متد منتظر آن‌ها نمی‌ماند؛
+     * نرخ این اعلان کمتر از نرخ کلی است (-Dbot.online.rate، پیش‌فرض 10 پیام در ثانیه) تا پاسخ به دستورات کند نشود.
+     * با -Dbot.online.notify=false غیرفعال می‌شود و با cancelOnlineNotification() لغو می‌شود.
+     * اگر bot.admin.chatId تنظیم شده باشد، پیشرفت در یک پیام پیشرفت در چت مدیر نمایش داده می‌شود.
+     * نتیجه هر چت در گزارش تحویل (DeliveryReport) ثبت می‌شود.
      */
     public static void notifyBotOnline() {
+        if (!Boolean.parseBoolean(System.getProperty("bot.online.notify", "true")) || knownChatIds.isEmpty()) {
+            return;
+        }
         String onlineMessage = "🟢 ربات آنلاین شد!\n\nبرای راهنما دستور /start را ارسال کنید.";
-        
-        for (Long chatId : knownChatIds) {
-            MessagePhotoSender.sendMessage(botToken, chatId, onlineMessage);
-            System.out.println("📤 اعلان آنلاین شدن به " + chatId + " ارسال شد.");
+        double rate = Double.parseDouble(System.getProperty("bot.online.rate", "10"));
+
+        Broadcaster broadcaster = new Broadcaster("online", RateLimiter.perSecond(rate, 1));
+        onlineBroadcast = broadcaster;
+        Thread.ofVirtual().name("online-notify").start(() -> {
+            // کپی ثابت: چت‌هایی که در حین ارسال اضافه می‌شوند اعلان نمی‌گیرند
+            long[] chatIds = knownChatIds.toArray();
+            reportToAdmin(broadcaster, "🟢 اعلان آنلاین شدن به " + chatIds.length + " چت");
+            DeliveryReport report = new DeliveryReport("online");
+            for (long chatId : chatIds) {
+                if (broadcaster.isCancelled()) break;
+                User user = userDb.findByChatId(chatId);
+                DeliveryReport.Entry entry = report.entry(user != null ? user.getUsername() : null, chatId, List.of(), 1);
+                broadcaster.submit(chatId, entry.step(() -> MessagePhotoSender.sendMessage(botToken, chatId, onlineMessage)));
+            }
+            broadcaster.awaitCompletion();
+            report.close();
+            onlineBroadcast = null;
+        });
+    }
+
+    /**
+     * نمایش پیشرفت یک ارسال گروهی در چت مدیر (اگر bot.admin.chatId تنظیم شده باشد)
+     */
+    private static void reportToAdmin(Broadcaster broadcaster, String title) {
+        if (adminChatId != null) {
+            broadcaster.reportTo(ProgressMessage.start(botToken, adminChatId, title));
+        }
+    }
+
+    /**
+     * لغو اعلان آنلاین شدن (اگر هنوز در حال اجرا باشد)
+     */
+    public static void cancelOnlineNotification() {
+        Broadcaster online = onlineBroadcast;
+        if (online != null) {
+            online.cancel();
         }
     }
     
+    /**
+     * شروع دریافت آپدیت‌ها با webhook (اگر تنظیم شده باشد)
+     * تنظیمات با System property ها:
+     * bot.mode=webhook، bot.webhook.port (پیش‌فرض 8443)، bot.webhook.path (پیش‌فرض /telegram)،
+     * bot.webhook.secret (اگر خالی باشد یک مقدار تصادفی ساخته می‌شود)،
+     * و bot.webhook.url (آدرس عمومی؛ اگر خالی باشد setWebhook صدا زده نمی‌شود و سرور فقط روی localhost گوش می‌دهد - برای تست محلی)
+     * @return true اگر سرور webhook راه‌اندازی شد؛ false یعنی باید از Long Polling استفاده شود
+     */
+    public static boolean startWebhook() {
+        if (!"webhook".equalsIgnoreCase(System.getProperty("bot.mode", "polling"))) {
+            return false;
+        }
+
+        int port = Integer.getInteger("bot.webhook.port", 8443);
+        String path = System.getProperty("bot.webhook.path", "/telegram");
+        String secret = System.getProperty("bot.webhook.secret", "");
+        String publicUrl = System.getProperty("bot.webhook.url", "");
+        boolean generatedSecret = secret.isEmpty();
+        if (generatedSecret) {
+            // بدون secret هر کسی در شبکه می‌توانست آپدیت جعلی (مثلاً /send) بفرستد
+            secret = newWebhookSecret();
+        }
+        // بدون آدرس عمومی تلگرام به سرور وصل نمی‌شود؛ فقط درخواست‌های محلی پذیرفته می‌شوند
+        InetSocketAddress address = publicUrl.isEmpty()
+                ? new InetSocketAddress(InetAddress.getLoopbackAddress(), port)
+                : new InetSocketAddress(port);
+
+        try {
+            WebhookServer server = new WebhookServer(address, path, secret, update -> {
+                try {
+                    commitState(processUpdate(update));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException(e);
+                }
+            });
+            server.start();
+
+            if (!publicUrl.isEmpty()) {
+                TelegramClient.Response response = TelegramClient.forToken(botToken).setWebhook(publicUrl, secret).join();
+                if (!response.isOk()) {
+                    LOG.warn("❌ ثبت webhook ناموفق بود (کد {})؛ استفاده از Long Polling.", response.statusCode());
+                    server.stop();
+                    return false;
+                }
+                LOG.info("✅ webhook روی {} ثبت شد.", publicUrl);
+            } else if (generatedSecret) {
+                LOG.info("🔑 secret تست محلی webhook (هدر X-Telegram-Bot-Api-Secret-Token): {}", secret);
+            }
+            return true;
+
+        } catch (Exception e) {
+            LOG.warn("❌ راه‌اندازی webhook ناموفق بود: {}؛ استفاده از Long Polling.", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * secret تصادفی برای webhook (حروف مجاز تلگرام: A-Z، a-z، 0-9، _ و -)
+     */
+    private static String newWebhookSecret() {
+        byte[] random = new byte[32];
+        new SecureRandom().nextBytes(random);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(random);
+    }
+
     /**
      * Polling برای دریافت و پردازش دستورات جدید
-     * این متد یک حلقه بی‌نهایت است که مدام پیام‌های جدید را چک می‌کند
+     * این متد یک حلقه بی‌نهایت است که مدام پیام‌های جدید را چک می‌کند؛
+     * دستورات در UpdateDispatcher صف می‌شوند تا دریافت پیام‌ها هیچ‌وقت پشت یک دستور طولانی نماند
      */
     public static void startPolling() {
-        long lastUpdateId = 0;
+        // ادامه از آخرین آپدیت ثبت‌شده؛ دستورات قبلی دوباره اجرا نمی‌شوند
+        long lastUpdateId = botState.lastUpdateId();
+        
+        // اگر قبلاً webhook ثبت شده باشد getUpdates خطای 409 می‌دهد
+        TelegramClient.forToken(botToken).deleteWebhook().exceptionally(e -> null).join();
         
         while (true) {
             try {
                 // Long Polling: 30 ثانیه صبر می‌کند تا پیام جدید برسد
-                String urlString = "https://api.telegram.org/bot" + botToken + "/getUpdates?offset=" + (lastUpdateId + 1) + "&timeout=30";
-                URL url = URI.create(urlString).toURL();
-                HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-                conn.setRequestMethod("GET");
-                conn.setConnectTimeout(35000);
-                conn.setReadTimeout(35000);
-
-                BufferedReader in = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-                StringBuilder response = new StringBuilder();
-                String line;
-
-                while ((line = in.readLine()) != null) {
-                    response.append(line);
-                }
-                in.close();
-
-                JSONObject json = new JSONObject(response.toString());
-                JSONArray results = json.getJSONArray("result");
-
-                for (int i = 0; i < results.length(); i++) {
-                    JSONObject update = results.getJSONObject(i);
-                    lastUpdateId = update.getLong("update_id");
-                    
-                    if (update.has("message")) {
-                        JSONObject msg = update.getJSONObject("message");
-                        JSONObject chat = msg.getJSONObject("chat");
-                        Long chatId = chat.getLong("id");
-                        
-                        // اضافه کردن به لیست شناخته‌شده‌ها
-                        knownChatIds.add(chatId);
-                        
-                        if (msg.has("text")) {
-                            String text = msg.getString("text");
-                            handleCommand(chatId, text, chat);
-                        }
-                    }
+                for (Update update : TelegramClient.forToken(botToken).getUpdates(lastUpdateId + 1, 30).join()) {
+                    lastUpdateId = processUpdate(update);
                 }
+                // ثبت یکجای offset و چت‌های جدید این دسته روی دیسک
+                commitState(lastUpdateId);
 
+            } catch (InterruptedException e) {
+                break;
             } catch (Exception e) {
-                System.out.println("⚠️ خطا در polling: " + e.getMessage());
+                LOG.warn("⚠️ خطا در polling: {}", e.getMessage());
                 try {
                     Thread.sleep(5000); // صبر 5 ثانیه قبل از تلاش مجدد
                 } catch (InterruptedException ie) {
@@ -144,13 +363,70 @@ public class Main {
             }
         }
     }
+
+    /**
+     * پردازش یک آپدیت (مشترک بین polling و webhook)
+     * چت در لیست شناخته‌شده‌ها و پایگاه داده ثبت می‌شود و دستور در صف پردازش قرار می‌گیرد
+     * @return update_id این آپدیت
+     */
+    public static long processUpdate(Update update) throws InterruptedException {
+        Metrics.UPDATES_RECEIVED.increment();
+        if (update.hasMessage()) {
+            if (update.date() > 0) {
+                // تأخیر بین ارسال پیام توسط کاربر (دقت ثانیه) و رسیدن آن به ربات
+                Metrics.POLLING_LAG.record(TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis() - update.date() * 1000));
+            }
+            Long chatId = update.chatId();
+            
+            // اضافه کردن به لیست شناخته‌شده‌ها (و وضعیت ذخیره‌شده) و پایگاه داده کاربران
+            botState.addChat(chatId);
+            userDb.upsert(userFromChat(update));
+            
+            if (update.text() != null) {
+                // پردازش دستور روی thread کارگر؛ دریافت آپدیت‌ها منتظر پایان آن نمی‌ماند
+                // آپدیت با getUpdates بعدی تأیید می‌شود؛ دستوری که هنگام توقف ناگهانی در صف بماند از دست می‌رود
+                boolean queued = dispatcher.dispatch(chatId, () -> {
+                    handleCommand(chatId, update.text(), update);
+                    markFirstResponse();
+                });
+                if (!queued) {
+                    replyBusy(chatId);
+                }
+            }
+        }
+        return update.updateId();
+    }
+
+    /**
+     * اطلاع به کاربری که صف دستوراتش پر است و دستورش اجرا نشد
+     * فقط اگر محدودیت 1 پیام در ثانیه همان چت همین حالا توکن داشته باشد، تا چتی که پشت سر هم پیام می‌دهد با پاسخ پر نشود؛
+     * ارسال روی virtual thread جدا انجام می‌شود تا polling منتظر نماند
+     */
+    private static void replyBusy(Long chatId) {
+        if (!Broadcaster.limiterFor(chatId).tryAcquire()) return;
+        Thread.ofVirtual().name("busy-reply").start(() -> MessagePhotoSender.sendMessage(botToken, chatId,
+                "⏳ دستورات قبلی شما هنوز در حال اجراست و این دستور انجام نشد؛ لطفاً کمی بعد دوباره امتحان کنید."));
+    }
     
+    /**
+     * ثبت offset و چت‌های جدید روی دیسک بعد از قرار گرفتن دستورات در صف
+     * خطای دیسک polling را متوقف نمی‌کند؛ در commit بعدی دوباره تلاش می‌شود
+     */
+    private static void commitState(long lastUpdateId) {
+        try {
+            botState.commit(lastUpdateId);
+        } catch (IOException e) {
+            LOG.error("⚠️ خطا در ذخیره وضعیت ربات: {}", e.getMessage());
+        }
+    }
+
     /**
      * پردازش دستورات دریافتی
      * @param chatId شناسه چت کاربر
      * @param text متن پیام دریافتی
+     * @param update آپدیت کامل (برای اطلاعات کاربر)
      */
-    public static void handleCommand(Long chatId, String text, JSONObject chat) {
+    public static void handleCommand(Long chatId, String text, Update update) {
         if (text.equals("/start")) {
             String helpMessage = "👋 سلام! به ربات خوش آمدید.\n\n" +
                     "این ربات برای ارسال پیام و عکس به کاربران از روی لیست اکسل طراحی شده است.\n\n" +
@@ -158,117 +434,126 @@ public class Main {
                     "/send - ارسال پیام به کاربران لیست\n" +
                     "/status - نمایش وضعیت ربات";
             MessagePhotoSender.sendMessage(botToken, chatId, helpMessage);
-            System.out.println("📩 /start از " + chatId);
+            COMMAND_LOG.debug("📩 /start از {}", chatId);
 
-            // ذخیره اطلاعات کاربر در اکسل در صورت جدید بودن
-            User user = new User();
-            user.setChatId(chatId);
-            if (chat.has("username")) {
-                user.setUsername(chat.getString("username"));
-            }
-            if (chat.has("last_name")) {
-                user.setLastname(chat.optString("last_name", ""));
-            } else if (chat.has("first_name")) {
-                user.setLastname(chat.optString("first_name", ""));
-            }
-            ExcelReader.upsertUserRow(user, "user2.xlsx");
+            // ذخیره اطلاعات کاربر در اکسل در صورت جدید بودن (به صورت دسته‌ای و با تأخیر کوتاه)
+            userStore.upsert(userFromChat(update));
             
         } else if (text.equals("/send")) {
             // گرفتن اسم کاربر
             String userName = "";
-            if (chat.has("first_name")) {
-                userName = chat.getString("first_name");
-            } else if (chat.has("username")) {
-                userName = chat.getString("username");
+            if (update.firstName() != null) {
+                userName = update.firstName();
+            } else if (update.username() != null) {
+                userName = update.username();
             }
             
-            // ارسال پیام شروع
+            // پیام شروع که در طول ارسال با پیشرفت (ارسال‌شده، نرخ، زمان باقی‌مانده) ویرایش می‌شود
             String startMsg = "کاربر عزیز " + userName + "، عکس‌ها درحال ارسال هستند... 📤";
-            MessagePhotoSender.sendMessage(botToken, chatId, startMsg);
+            ProgressMessage progress = ProgressMessage.start(botToken, chatId, startMsg);
             
-            // ارسال همه عکس‌های پوشه fol به این کاربر
-            MessagePhotoSender.sendAllPhotos(botToken, chatId, "fol");
+            // ارسال همه عکس‌های پوشه fol به این کاربر (با اولویت کمتر از پاسخ به دستورات بقیه کاربران)
+            SendScheduler.LaneScope scope = SendScheduler.lane(SendScheduler.Lane.USER_SEND);
+            try {
+                MessagePhotoSender.sendAllPhotos(botToken, chatId, "fol", progress);
+            } finally {
+                scope.close();
+            }
             
-            MessagePhotoSender.sendMessage(botToken, chatId, "✅ ارسال عکس‌ها تمام شد!");
+            // پیام پایانی هم ویرایش همان پیام است (نه پیام جدید)
+            progress.finish("✅ ارسال عکس‌ها تمام شد!");
             
         } else if (text.equals("/status")) {
             String status = "📊 وضعیت ربات:\n" +
-                    "• کاربران شناخته شده: " + knownChatIds.size();
+                    "• کاربران شناخته شده: " + knownChatIds.size() + "\n" +
+                    "• دستورات در صف: " + dispatcher.pending() + "\n" +
+                    "• نرخ ارسال: " + String.format("%.1f", SendRateController.global().currentRate()) + " پیام در ثانیه\n" +
+                    "• صف ارسال: " + SendScheduler.global().depthSummary() + "\n" +
+                    "• راه‌اندازی: " + TimeUnit.NANOSECONDS.toMillis(readyNanos.get()) + " ms، اولین پاسخ: "
+                    + TimeUnit.NANOSECONDS.toMillis(firstResponseNanos.get()) + " ms\n" +
+                    Metrics.summary();
             MessagePhotoSender.sendMessage(botToken, chatId, status);
         }
     }
     
+    /**
+     * ساخت User از اطلاعات chat تلگرام
+     * اگر last_name نباشد، first_name به عنوان نام خانوادگی ثبت می‌شود
+     */
+    private static User userFromChat(Update update) {
+        User user = new User();
+        user.setChatId(update.chatId());
+        if (update.username() != null) {
+            user.setUsername(update.username());
+        }
+        if (update.lastName() != null) {
+            user.setLastname(update.lastName());
+        } else if (update.firstName() != null) {
+            user.setLastname(update.firstName());
+        }
+        return user;
+    }
+
     /**
      * ارسال پیام و عکس به کاربران از فایل اکسل
+     * به هر کاربر یک پیام و سپس 6 عکس (از ایندکس 6 * i) ارسال می‌شود؛
+     * کاربران به صورت موازی و عکس‌های هر کاربر به ترتیب ارسال می‌شوند؛
+     * نتیجه هر کاربر (از جمله کاربرانی که پیدا نشدند) در گزارش تحویل (DeliveryReport) ثبت می‌شود
      */
     public static void sendToExcelUsers() {
-        List<User> users = ExcelReader.readUsersFromExcel("user2.xlsx");
+        PhotoCatalog photos = PhotoCatalog.forFolder("fol");
+        // عکس‌هایی که بعد از شروع برنامه اضافه شده‌اند هم قبل از رسیدن نوبت ارسالشان آماده می‌شوند
+        PhotoOptimizer.shared().prewarm("fol");
         
-        for (int i = 0; i < users.size(); i++) {
-            User user = users.get(i);
-            System.out.println(user.username + "  " + i);
-            
-            String message = "Hello " + user.getGender() + " " + user.getLastname() + " " +
-                    "for the first assignment, please translate these pages into persian. " +
-                    "The translation must be extremely accurate. You may use AI tools.";
-            
-            Long chatId = getChatIdByUsername(user.username);
-
-            if (chatId != null) {
-                MessagePhotoSender.sendMessage(botToken, chatId, message);
-                MessagePhotoSender.sendKPhotos(botToken, chatId, "fol", 6, 6 * i);
-                System.out.println("✅ ارسال به " + user.username + " انجام شد.");
-            } else {
-                System.out.println("❌ " + user.username + " - کاربر پیدا نشد یا پیام نداده است.");
+        Broadcaster broadcaster = new Broadcaster("excel");
+        reportToAdmin(broadcaster, "📋 ارسال به کاربران لیست اکسل");
+        DeliveryReport report = new DeliveryReport("excel");
+        // کاربران به صورت استریمی خوانده می‌شوند؛ ارسال از سطر اول شروع می‌شود و منتظر خواندن کل فایل نمی‌ماند
+        // submit وقتی سقف مراحل در جریان Broadcaster پر باشد منتظر می‌ماند، پس خواندن هم جلوتر از ارسال نمی‌رود
+        try (Stream<User> users = ExcelReader.streamUsersFromExcel("user2.xlsx")) {
+            int i = 0;
+            for (Iterator<User> it = users.iterator(); it.hasNext(); i++) {
+                submitExcelUser(broadcaster, report, it.next(), i, photos);
             }
         }
+        broadcaster.awaitCompletion();
+        report.close();
     }
 
     /**
-     * پیدا کردن chat_id کاربر بر اساس username
-     * توجه: فقط کاربرانی که قبلاً به ربات پیام داده‌اند پیدا می‌شوند
-     * @param targetUsername نام کاربری تلگرام (بدون @)
-     * @return chat_id یا null اگر پیدا نشد
+     * صف کردن پیام و عکس‌های کاربر i ام لیست اکسل
      */
-    public static Long getChatIdByUsername(String targetUsername) {
-        try {
-            String urlString = "https://api.telegram.org/bot" + botToken + "/getUpdates";
-            URL url = URI.create(urlString).toURL();
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("GET");
-
-            BufferedReader in = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-            StringBuilder response = new StringBuilder();
-            String line;
-
-            while ((line = in.readLine()) != null) {
-                response.append(line);
-            }
-            in.close();
-
-            JSONObject json = new JSONObject(response.toString());
-            JSONArray results = json.getJSONArray("result");
-
-            for (int i = 0; i < results.length(); i++) {
-                if (!results.getJSONObject(i).has("message"))
-                    continue;
-
-                JSONObject msg = results.getJSONObject(i).getJSONObject("message");
-                JSONObject chat = msg.getJSONObject("chat");
-
-                if (chat.has("username")) {
-                    String username = chat.getString("username");
+    private static void submitExcelUser(Broadcaster broadcaster, DeliveryReport report, User user, int i, PhotoCatalog photos) {
+        BROADCAST_LOG.debug("{}  {}", user.username, i);
+        
+        String message = "Hello " + user.getGender() + " " + user.getLastname() + " " +
+                "for the first assignment, please translate these pages into persian. " +
+                "The translation must be extremely accurate. You may use AI tools.";
+        
+        Long chatId = user.getChatId() != null ? user.getChatId() : getChatIdByUsername(user.username);
 
-                    if (username.equalsIgnoreCase(targetUsername)) {
-                        return chat.getLong("id");
-                    }
-                }
+        List<File> slice = photos.slice(6 * i, 6);
+        if (chatId != null) {
+            DeliveryReport.Entry entry = report.entry(user.username, chatId, slice, slice.isEmpty() ? 1 : 2);
+            broadcaster.submit(chatId, entry.step(() -> MessagePhotoSender.sendMessage(botToken, chatId, message)));
+            if (!slice.isEmpty()) {
+                // عکس‌های هر کاربر در قالب یک آلبوم (یک درخواست) ارسال می‌شوند
+                broadcaster.submit(chatId, entry.step(() -> !MessagePhotoSender.sendPhotoAlbum(botToken, chatId, slice).contains(false)));
             }
-
-        } catch (Exception e) {
-            e.printStackTrace();
+        } else {
+            BROADCAST_LOG.warn("❌ {} - کاربر پیدا نشد یا پیام نداده است.", user.username);
+            report.skipped(user.username, slice, "not_found");
         }
+    }
 
-        return null;
+    /**
+     * پیدا کردن chat_id کاربر بر اساس username از پایگاه داده محلی (بدون درخواست شبکه)
+     * توجه: فقط کاربرانی که قبلاً به ربات پیام داده‌اند یا chat_id آن‌ها در اکسل ثبت شده پیدا می‌شوند
+     * @param targetUsername نام کاربری تلگرام (بدون @)
+     * @return chat_id یا null اگر پیدا نشد
+     */
+    public static Long getChatIdByUsername(String targetUsername) {
+        User user = userDb.findByUsername(targetUsername);
+        return user == null ? null : user.getChatId();
     }
 }
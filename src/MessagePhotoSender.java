@@ -1,18 +1,35 @@
-import java.io.*;
-import java.net.HttpURLConnection;
-import java.net.URI;
-import java.net.URL;
-import java.net.URLEncoder;
-import java.nio.charset.StandardCharsets;
-import java.util.Arrays;
-import java.util.Comparator;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.logging.log4j.Logger;
+import org.json.JSONArray;
+import org.json.JSONObject;
 
 /**
  * کلاس ارسال پیام و عکس به تلگرام
- * این کلاس شامل متدهای ارتباط با API تلگرام است
+ * این کلاس شامل متدهای ارتباط با API تلگرام است؛
+ * هر درخواست قبل از ارسال در صف thread جاری از SendScheduler نوبت می‌گیرد
+ * و پاسخ ارسال‌ها در گزارش تحویل ارسال گروهی (DeliveryReport) ثبت می‌شود
  */
 public class MessagePhotoSender {
 
+    private static final Logger LOG = AsyncLogging.logger("send");
+
+    // کش file_id عکس‌های آپلودشده (هش محتوا -> file_id)
+    private static final FileIdCache FILE_ID_CACHE = new FileIdCache("file_ids.json");
+
+    // محدودیت‌های sendMediaGroup: حداکثر 10 عکس در هر آلبوم و 10 مگابایت برای هر عکس
+    private static final int MAX_ALBUM_SIZE = 10;
+    private static final long MAX_ALBUM_PHOTO_BYTES = 10L * 1024 * 1024;
+
+    /**
+     * نوشتن file_id های ذخیره‌نشده روی دیسک (هنگام خروج)
+     */
+    public static void flushFileIdCache() {
+        FILE_ID_CACHE.flush();
+    }
+
     /**
      * ارسال همه عکس‌های یک پوشه به کاربر
      * @param botToken توکن ربات
@@ -20,34 +37,32 @@ public class MessagePhotoSender {
      * @param folderPath مسیر پوشه عکس‌ها
      */
     public static void sendAllPhotos(String botToken, Long chatId, String folderPath) {
+        sendAllPhotos(botToken, chatId, folderPath, null);
+    }
+
+    /**
+     * ارسال همه عکس‌های یک پوشه به کاربر با گزارش پیشرفت
+     * @param progress پیام پیشرفت (بعد از هر آلبوم به‌روز می‌شود) یا null
+     */
+    public static void sendAllPhotos(String botToken, Long chatId, String folderPath, ProgressMessage progress) {
         try {
-            File folder = new File(folderPath);
-            File[] files = folder.listFiles((dir, name) -> name.endsWith(".jpg") || name.endsWith(".png"));
+            List<File> files = PhotoCatalog.forFolder(folderPath).files();
 
-            if (files == null || files.length == 0) {
-                System.out.println("هیچ عکسی در فولدر وجود ندارد!");
+            if (files.isEmpty()) {
+                LOG.warn("هیچ عکسی در فولدر {} وجود ندارد!", folderPath);
                 return;
             }
 
-            // مرتب‌سازی فایل‌ها بر اساس عدد داخل نام فایل
-            Arrays.sort(files, Comparator.comparingInt(f -> {
-                String name = f.getName()
-                        .replace(".jpg", "")
-                        .replace(".png", "")
-                        .replaceAll("[^0-9]", "");
-                if (name.isEmpty()) return 0;
-                return Integer.parseInt(name.trim());
-            }));
-
-            // ارسال همه عکس‌ها
-            for (File file : files) {
-                sendPhoto(botToken, chatId, file);
+            // ارسال همه عکس‌ها به صورت آلبوم‌های حداکثر 10 تایی
+            if (progress != null) {
+                progress.addTotal(files.size());
             }
+            sendPhotoAlbum(botToken, chatId, files, progress);
             
-            System.out.println("✅ " + files.length + " عکس به " + chatId + " ارسال شد.");
+            LOG.info("✅ {} عکس به {} ارسال شد.", files.size(), chatId);
 
         } catch (Exception e) {
-            e.printStackTrace();
+            LOG.error("خطا در ارسال عکس‌ها به {}", chatId, e);
         }
     }
 
@@ -61,86 +76,237 @@ public class MessagePhotoSender {
      */
     public static void sendKPhotos(String botToken, Long chatId, String folderPath, int k, int start) {
         try {
-            File folder = new File(folderPath);
-            File[] files = folder.listFiles((dir, name) -> name.endsWith(".jpg") || name.endsWith(".png"));
+            PhotoCatalog catalog = PhotoCatalog.forFolder(folderPath);
 
-            if (files == null || files.length == 0) {
-                System.out.println("هیچ عکسی در فولدر وجود ندارد!");
+            if (catalog.size() == 0) {
+                LOG.warn("هیچ عکسی در فولدر {} وجود ندارد!", folderPath);
                 return;
             }
 
-            // مرتب‌سازی فایل‌ها بر اساس عدد داخل نام فایل
-            // مثال: 1.jpg, 2.jpg, 10.jpg به ترتیب عددی مرتب می‌شوند
-            Arrays.sort(files, Comparator.comparingInt(f -> {
-                String name = f.getName()
-                        .replace(".jpg", "")
-                        .replace(".png", "")
-                        .replaceAll("[^0-9]", ""); // فقط اعداد نگه داشته می‌شوند
-                if (name.isEmpty()) return 0;
-                return Integer.parseInt(name.trim());
-            }));
-
-            // محاسبه تعداد عکس‌هایی که باید ارسال شوند
-            int end = Math.min(start + k, files.length);
-
-            for (int i = start; i < end; i++) {
-                sendPhoto(botToken, chatId, files[i]);
+            // برش k عکس از فهرست کش‌شده (بدون لیست کردن و مرتب‌سازی دوباره پوشه)
+            List<File> slice = catalog.slice(start, k);
+            if (!slice.isEmpty()) {
+                sendPhotoAlbum(botToken, chatId, slice);
+            }
+
+        } catch (Exception e) {
+            LOG.error("خطا در ارسال عکس‌ها به {}", chatId, e);
+        }
+    }
+
+    /**
+     * ارسال چند عکس به صورت آلبوم با sendMediaGroup (هر آلبوم حداکثر 10 عکس)
+     * عکس‌هایی که شرایط آلبوم را ندارند (مثلاً حجم بیش از حد) جداگانه با sendPhoto ارسال می‌شوند؛
+     * ترتیب ارسال همان ترتیب لیست است
+     * @param botToken توکن ربات
+     * @param chatId شناسه چت کاربر
+     * @param photos لیست عکس‌ها (ممکن است یک فایل چند بار تکرار شده باشد)
+     * @return نتیجه ارسال هر عکس با همان ایندکس لیست ورودی
+     */
+    public static List<Boolean> sendPhotoAlbum(String botToken, Long chatId, List<File> photos) {
+        return sendPhotoAlbum(botToken, chatId, photos, null);
+    }
+
+    /**
+     * ارسال آلبوم با گزارش نتیجه هر عکس به پیام پیشرفت (در صورت وجود)
+     * ویرایش‌های پیام پیشرفت از سهمیه همین چت (Broadcaster.limiterFor) برداشت می‌کنند؛ پس در این حالت هر درخواست ارسال
+     * هم قبل از رفتن یک مجوز از آن می‌گیرد تا ویرایش‌ها فقط در فاصله بین ارسال‌ها انجام شوند و مجموع از سقف چت بیشتر نشود.
+     * بدون پیام پیشرفت (مثلاً داخل Broadcaster که خودش مجوز هر مرحله را گرفته) مجوزی گرفته نمی‌شود.
+     */
+    public static List<Boolean> sendPhotoAlbum(String botToken, Long chatId, List<File> photos, ProgressMessage progress) {
+        // نتیجه‌ها به ترتیب ارسال (همان ترتیب photos) به انتها اضافه می‌شوند
+        List<Boolean> results = new ArrayList<>(photos.size());
+        List<File> batch = new ArrayList<>();
+        RateLimiter chatLimiter = progress != null ? Broadcaster.limiterFor(chatId) : null;
+        int reported = 0;
+
+        try {
+            for (File photo : photos) {
+                if (isAlbumEligible(photo)) {
+                    batch.add(photo);
+                    if (batch.size() == MAX_ALBUM_SIZE) {
+                        flushAlbum(botToken, chatId, batch, results, chatLimiter);
+                        reported = reportProgress(results, reported, progress);
+                    }
+                } else {
+                    // برای حفظ ترتیب، ابتدا آلبوم نیمه‌کاره ارسال می‌شود
+                    flushAlbum(botToken, chatId, batch, results, chatLimiter);
+                    awaitChatPermit(chatLimiter);
+                    results.add(sendPhotoSafely(botToken, chatId, photo));
+                    reported = reportProgress(results, reported, progress);
+                }
+            }
+            flushAlbum(botToken, chatId, batch, results, chatLimiter);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            while (results.size() < photos.size()) {
+                results.add(false);
             }
+        }
+        reportProgress(results, reported, progress);
+        return results;
+    }
+
+    /**
+     * گزارش نتایجی که از آخرین گزارش به انتهای results اضافه شده‌اند
+     * @return تعداد نتایج گزارش‌شده تا اینجا
+     */
+    private static int reportProgress(List<Boolean> results, int reported, ProgressMessage progress) {
+        if (progress == null) return results.size();
+        for (int i = reported; i < results.size(); i++) {
+            progress.record(results.get(i));
+        }
+        return results.size();
+    }
 
+    private static boolean isAlbumEligible(File photo) {
+        return photo.isFile() && PhotoOptimizer.shared().optimized(photo).length() <= MAX_ALBUM_PHOTO_BYTES;
+    }
+
+    /**
+     * ارسال عکس‌های جمع‌شده در batch و خالی کردن آن
+     * آلبوم تک‌عضوی مجاز نیست و با sendPhoto ارسال می‌شود
+     */
+    private static void flushAlbum(String botToken, Long chatId, List<File> batch, List<Boolean> results,
+                                   RateLimiter chatLimiter) throws InterruptedException {
+        if (batch.isEmpty()) return;
+        int first = results.size();
+        try {
+            awaitChatPermit(chatLimiter);
+            if (batch.size() == 1 || !sendMediaGroup(botToken, chatId, batch, results)) {
+                // آلبوم رد شد (کد 400)؛ ارسال تک‌تک عکس‌ها
+                for (File photo : batch) {
+                    awaitChatPermit(chatLimiter);
+                    results.add(sendPhotoSafely(botToken, chatId, photo));
+                }
+            }
+        } catch (InterruptedException e) {
+            batch.clear();
+            throw e;
         } catch (Exception e) {
-            e.printStackTrace();
+            DeliveryReport.recordFailure(e);
+            LOG.error("خطا در ارسال آلبوم به {}", chatId, e);
+            // عکس‌هایی از این آلبوم که نتیجه‌شان ثبت نشده ناموفق هستند
+            while (results.size() < first + batch.size()) {
+                results.add(false);
+            }
         }
+        batch.clear();
+    }
+
+    /**
+     * گرفتن مجوز سهمیه چت قبل از یک درخواست ارسال (null یعنی بدون محدودیت)
+     */
+    private static void awaitChatPermit(RateLimiter chatLimiter) throws InterruptedException {
+        if (chatLimiter != null) {
+            chatLimiter.acquire();
+        }
+    }
+
+    private static boolean sendPhotoSafely(String botToken, Long chatId, File photo) {
+        try {
+            return sendPhoto(botToken, chatId, photo);
+        } catch (Exception e) {
+            DeliveryReport.recordFailure(e);
+            LOG.error("خطا در ارسال عکس {} به {}", photo.getName(), chatId, e);
+            return false;
+        }
+    }
+
+    /**
+     * ارسال یک آلبوم با sendMediaGroup
+     * عکس‌هایی که file_id آن‌ها در کش است بدون آپلود و بقیه با attach:// آپلود می‌شوند
+     * (نسخه آماده‌شده PhotoOptimizer آپلود می‌شود؛ file_id با هش فایل اصلی در کش ثبت می‌شود)
+     * @return false اگر تلگرام درخواست را رد کند (کد 400) تا فراخواننده تک‌تک ارسال کند
+     */
+    private static boolean sendMediaGroup(String botToken, Long chatId, List<File> photos, List<Boolean> results) throws Exception {
+        // ساخت آرایه media؛ برای عکس‌های بدون file_id، فایل به عنوان part جداگانه پیوست می‌شود
+        JSONArray media = new JSONArray();
+        boolean[] uploaded = new boolean[photos.size()];
+        List<File> uploadFiles = new ArrayList<>();
+        for (int i = 0; i < photos.size(); i++) {
+            File photo = photos.get(i);
+            String fileId = FILE_ID_CACHE.get(photo);
+            if (fileId == null) {
+                fileId = "attach://photo" + uploadFiles.size();
+                uploaded[i] = true;
+                uploadFiles.add(PhotoOptimizer.shared().optimized(photo));
+            }
+            media.put(new JSONObject().put("type", "photo").put("media", fileId));
+        }
+
+        SendScheduler.global().acquire();
+        TelegramClient.Response response = TelegramClient.forToken(botToken).sendMediaGroup(chatId, media, uploadFiles).join();
+        DeliveryReport.record(response);
+        int responseCode = response.statusCode();
+        LOG.debug("ارسال آلبوم {} عکسی ({} آپلود) به {} با کد پاسخ: {}", photos.size(), uploadFiles.size(), chatId, responseCode);
+        if (responseCode == 400) {
+            return false;
+        }
+        if (responseCode != 200) {
+            for (int i = 0; i < photos.size(); i++) {
+                results.add(false);
+            }
+            return true;
+        }
+
+        // پیام‌های برگشتی به همان ترتیب media هستند؛ file_id هر عکس در کش ذخیره می‌شود
+        JSONArray messages = response.json().getJSONArray("result");
+        for (int i = 0; i < photos.size(); i++) {
+            if (uploaded[i] && i < messages.length()) {
+                JSONArray sizes = messages.getJSONObject(i).getJSONArray("photo");
+                FILE_ID_CACHE.put(photos.get(i), sizes.getJSONObject(sizes.length() - 1).getString("file_id"));
+            }
+        }
+        for (int i = 0; i < photos.size(); i++) {
+            results.add(true);
+        }
+        return true;
     }
 
     /**
      * ارسال یک عکس به کاربر
-     * از multipart/form-data برای آپلود فایل استفاده می‌کند
+     * اگر این عکس قبلاً آپلود شده باشد، با file_id ذخیره‌شده و بدون آپلود مجدد ارسال می‌شود
      * @param botToken توکن ربات
      * @param chatId شناسه چت کاربر
      * @param photoFile فایل عکس
+     * @return true در صورت ارسال موفق
      */
-    public static void sendPhoto(String botToken, Long chatId, File photoFile) throws Exception {
-        String urlString = "https://api.telegram.org/bot" + botToken + "/sendPhoto";
-        URL url = URI.create(urlString).toURL();
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setRequestMethod("POST");
-        conn.setDoOutput(true);
-
-        // ساخت boundary یکتا برای multipart
-        String boundary = "===" + System.currentTimeMillis() + "===";
-        conn.setRequestProperty("Content-Type", "multipart/form-data; boundary=" + boundary);
-
-        OutputStream outputStream = conn.getOutputStream();
-        PrintWriter writer = new PrintWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), true);
-
-        // اضافه کردن chat_id به فرم
-        writer.append("--").append(boundary).append("\r\n");
-        writer.append("Content-Disposition: form-data; name=\"chat_id\"").append("\r\n\r\n");
-        writer.append(chatId.toString()).append("\r\n");
-
-        // اضافه کردن فایل عکس به فرم
-        writer.append("--").append(boundary).append("\r\n");
-        writer.append("Content-Disposition: form-data; name=\"photo\"; filename=\"").append(photoFile.getName()).append("\"").append("\r\n");
-        writer.append("Content-Type: image/jpeg").append("\r\n\r\n");
-        writer.flush();
-
-        // خواندن و ارسال محتوای فایل
-        FileInputStream inputStream = new FileInputStream(photoFile);
-        byte[] buffer = new byte[4096];
-        int bytesRead;
-        while ((bytesRead = inputStream.read(buffer)) != -1) {
-            outputStream.write(buffer, 0, bytesRead);
-        }
-        outputStream.flush();
-        inputStream.close();
-
-        // پایان multipart
-        writer.append("\r\n").flush();
-        writer.append("--").append(boundary).append("--").append("\r\n");
-        writer.close();
-
-        int responseCode = conn.getResponseCode();
-        System.out.println("ارسال " + photoFile.getName() + " به " + chatId + " با کد پاسخ: " + responseCode);
+    public static boolean sendPhoto(String botToken, Long chatId, File photoFile) throws Exception {
+        String fileId = FILE_ID_CACHE.get(photoFile);
+        if (fileId != null) {
+            SendScheduler.global().acquire();
+            TelegramClient.Response response = TelegramClient.forToken(botToken).sendPhoto(chatId, fileId).join();
+            DeliveryReport.record(response);
+            int responseCode = response.statusCode();
+            LOG.debug("ارسال {} (از کش) به {} با کد پاسخ: {}", photoFile.getName(), chatId, responseCode);
+            if (responseCode != 400) {
+                return responseCode == 200;
+            }
+            // کد 400 یعنی file_id دیگر معتبر نیست؛ حذف از کش و آپلود مجدد
+            FILE_ID_CACHE.invalidate(photoFile);
+        }
+        return uploadPhoto(botToken, chatId, photoFile);
+    }
+
+    /**
+     * آپلود نسخه آماده‌شده یک عکس با multipart/form-data و ذخیره file_id برگشتی در کش
+     */
+    private static boolean uploadPhoto(String botToken, Long chatId, File photoFile) throws Exception {
+        File upload = PhotoOptimizer.shared().optimized(photoFile);
+        SendScheduler.global().acquire();
+        TelegramClient.Response response = TelegramClient.forToken(botToken).uploadPhoto(chatId, upload).join();
+        DeliveryReport.record(response);
+        int responseCode = response.statusCode();
+        LOG.debug("ارسال {} به {} با کد پاسخ: {}", photoFile.getName(), chatId, responseCode);
+        if (responseCode != 200) {
+            return false;
+        }
+
+        // بزرگ‌ترین سایز عکس در آخر آرایه photo قرار دارد
+        JSONArray sizes = response.json().getJSONObject("result").getJSONArray("photo");
+        FILE_ID_CACHE.put(photoFile, sizes.getJSONObject(sizes.length() - 1).getString("file_id"));
+        return true;
     }
     
     /**
@@ -148,34 +314,63 @@ public class MessagePhotoSender {
      * @param botToken توکن ربات
      * @param chatId شناسه چت کاربر
      * @param message متن پیام
+     * @return true در صورت ارسال موفق
      */
-    public static void sendMessage(String botToken, Long chatId, String message) {
+    public static boolean sendMessage(String botToken, Long chatId, String message) {
         try {
-            String urlString = "https://api.telegram.org/bot" + botToken + "/sendMessage";
-            URL url = URI.create(urlString).toURL();
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("POST");
-            conn.setDoOutput(true);
-            conn.setRequestProperty("Content-Type", "application/x-www-form-urlencoded; charset=UTF-8");
-
-            // URL encode کردن پیام برای جلوگیری از مشکل کاراکترهای خاص
-            String encodedMessage = URLEncoder.encode(message, StandardCharsets.UTF_8);
-            String data = "chat_id=" + chatId + "&text=" + encodedMessage;
-            
-            OutputStream os = conn.getOutputStream();
-            os.write(data.getBytes(StandardCharsets.UTF_8));
-            os.flush();
-            os.close();
-
-            int responseCode = conn.getResponseCode();
+            SendScheduler.global().acquire();
+            TelegramClient.Response response = TelegramClient.forToken(botToken).sendMessage(chatId, message).join();
+            DeliveryReport.record(response);
+            int responseCode = response.statusCode();
             if (responseCode == 200) {
-                System.out.println("✅ پیام با موفقیت ارسال شد به " + chatId);
-            } else {
-                System.out.println("❌ خطا در ارسال پیام. کد: " + responseCode);
+                LOG.debug("✅ پیام با موفقیت ارسال شد به {}", chatId);
+                return true;
+            }
+            LOG.warn("❌ خطا در ارسال پیام به {}. کد: {}", chatId, responseCode);
+
+        } catch (Exception e) {
+            DeliveryReport.recordFailure(e);
+            LOG.error("خطا در ارسال پیام به {}", chatId, e);
+        }
+        return false;
+    }
+
+    /**
+     * ارسال پیام متنی و برگرداندن message_id آن (برای ویرایش‌های بعدی با editMessageText)
+     * @return message_id یا 0 در صورت خطا
+     */
+    public static long sendMessageForId(String botToken, Long chatId, String message) {
+        try {
+            SendScheduler.global().acquire();
+            TelegramClient.Response response = TelegramClient.forToken(botToken).sendMessage(chatId, message).join();
+            if (response.isOk()) {
+                return response.json().getJSONObject("result").getLong("message_id");
+            }
+            LOG.warn("❌ خطا در ارسال پیام به {}. کد: {}", chatId, response.statusCode());
+
+        } catch (Exception e) {
+            LOG.error("خطا در ارسال پیام به {}", chatId, e);
+        }
+        return 0;
+    }
+
+    /**
+     * ویرایش متن پیامی که قبلاً ارسال شده
+     * پاسخ "message is not modified" (متن تکراری) موفق حساب می‌شود
+     * @return true در صورت ویرایش موفق
+     */
+    public static boolean editMessageText(String botToken, Long chatId, long messageId, String message) {
+        try {
+            SendScheduler.global().acquire();
+            TelegramClient.Response response = TelegramClient.forToken(botToken).editMessageText(chatId, messageId, message).join();
+            if (response.isOk() || response.description().contains("message is not modified")) {
+                return true;
             }
+            LOG.warn("❌ خطا در ویرایش پیام {}. کد: {} {}", messageId, response.statusCode(), response.description());
 
         } catch (Exception e) {
-            e.printStackTrace();
+            LOG.error("خطا در ویرایش پیام {}", messageId, e);
         }
+        return false;
     }
 }
@@ -0,0 +1,259 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * آمار اجرای ربات (latency هر متد Bot API، حجم آپلود، تلاش‌های مجدد، خطاها، زمان خواندن/نوشتن اکسل و تأخیر polling)
+ * ثبت آمار روی مسیر ارسال بدون تخصیص حافظه انجام می‌شود: شمارنده‌ها LongAdder و هیستوگرام‌ها آرایه‌ای ثابت از سطل‌ها هستند.
+ * خروجی با فرمت متنی Prometheus از MetricsServer و خلاصه آن در دستور /status نمایش داده می‌شود.
+ */
+public class Metrics {
+
+    // هیستوگرام latency هر متد Bot API (کلید: نام متد)
+    private static final Map<String, Histogram> API_LATENCY = new ConcurrentHashMap<>();
+
+    // زمان انتظار برای نوبت ارسال در هر صف SendScheduler (کلید: نام صف)
+    private static final Map<String, Histogram> SEND_WAIT = new ConcurrentHashMap<>();
+
+    // تعداد پاسخ‌های ناموفق به تفکیک کد HTTP؛ ایندکس 0 یعنی خطای شبکه یا timeout
+    private static final AtomicLongArray ERRORS_BY_CODE = new AtomicLongArray(600);
+
+    public static final LongAdder UPLOADED_BYTES = new LongAdder();
+    public static final LongAdder RETRIES = new LongAdder();
+    public static final LongAdder UPDATES_RECEIVED = new LongAdder();
+
+    public static final Histogram EXCEL_LOAD = new Histogram();
+    public static final Histogram EXCEL_FLUSH = new Histogram();
+    // خواندن، کوچک کردن و فشرده‌سازی یک عکس در PhotoOptimizer
+    public static final Histogram PHOTO_OPTIMIZE = new Histogram();
+    // فاصله زمان ارسال پیام توسط کاربر تا پردازش آن در ربات
+    public static final Histogram POLLING_LAG = new Histogram();
+
+    // مقادیر لحظه‌ای (مثل طول صف‌ها) که هنگام خروجی گرفتن خوانده می‌شوند
+    private static final Map<String, DoubleSupplier> GAUGES = new ConcurrentHashMap<>();
+
+    private static final long START_MILLIS = System.currentTimeMillis();
+
+    /**
+     * هیستوگرام latency یک متد Bot API
+     */
+    public static Histogram apiLatency(String method) {
+        Histogram histogram = API_LATENCY.get(method);
+        return histogram != null ? histogram : API_LATENCY.computeIfAbsent(method, m -> new Histogram());
+    }
+
+    /**
+     * هیستوگرام زمان انتظار یک صف ارسال
+     */
+    public static Histogram sendWait(String lane) {
+        return SEND_WAIT.computeIfAbsent(lane, l -> new Histogram());
+    }
+
+    /**
+     * ثبت یک پاسخ ناموفق
+     * @param statusCode کد HTTP، یا 0 برای خطای شبکه
+     */
+    public static void recordError(int statusCode) {
+        ERRORS_BY_CODE.incrementAndGet(statusCode > 0 && statusCode < ERRORS_BY_CODE.length() ? statusCode : 0);
+    }
+
+    /**
+     * ثبت یک مقدار لحظه‌ای
+     * @param name نام متریک (بدون پیشوند bot_)
+     */
+    public static void gauge(String name, DoubleSupplier value) {
+        GAUGES.put(name, value);
+    }
+
+    /**
+     * خروجی همه آمار با فرمت متنی Prometheus (نسخه 0.0.4)
+     */
+    public static String prometheusText() {
+        StringBuilder out = new StringBuilder(4096);
+
+        out.append("# TYPE bot_api_latency_seconds summary\n");
+        for (String method : sortedKeys(API_LATENCY)) {
+            API_LATENCY.get(method).appendSummary(out, "bot_api_latency_seconds", "method=\"" + method + "\"");
+        }
+
+        out.append("# TYPE bot_send_wait_seconds summary\n");
+        for (String lane : sortedKeys(SEND_WAIT)) {
+            SEND_WAIT.get(lane).appendSummary(out, "bot_send_wait_seconds", "lane=\"" + lane + "\"");
+        }
+
+        out.append("# TYPE bot_api_errors_total counter\n");
+        for (int code = 0; code < ERRORS_BY_CODE.length(); code++) {
+            long count = ERRORS_BY_CODE.get(code);
+            if (count > 0) {
+                out.append("bot_api_errors_total{code=\"").append(code == 0 ? "network" : Integer.toString(code))
+                        .append("\"} ").append(count).append('\n');
+            }
+        }
+
+        appendCounter(out, "bot_api_retries_total", RETRIES.sum());
+        appendCounter(out, "bot_uploaded_bytes_total", UPLOADED_BYTES.sum());
+        appendCounter(out, "bot_updates_received_total", UPDATES_RECEIVED.sum());
+
+        out.append("# TYPE bot_excel_load_seconds summary\n");
+        EXCEL_LOAD.appendSummary(out, "bot_excel_load_seconds", "");
+        out.append("# TYPE bot_excel_flush_seconds summary\n");
+        EXCEL_FLUSH.appendSummary(out, "bot_excel_flush_seconds", "");
+        out.append("# TYPE bot_photo_optimize_seconds summary\n");
+        PHOTO_OPTIMIZE.appendSummary(out, "bot_photo_optimize_seconds", "");
+        out.append("# TYPE bot_polling_lag_seconds summary\n");
+        POLLING_LAG.appendSummary(out, "bot_polling_lag_seconds", "");
+
+        for (String name : sortedKeys(GAUGES)) {
+            out.append("# TYPE bot_").append(name).append(" gauge\n");
+            out.append("bot_").append(name).append(' ').append(format(GAUGES.get(name).getAsDouble())).append('\n');
+        }
+        out.append("# TYPE bot_uptime_seconds gauge\n");
+        out.append("bot_uptime_seconds ").append((System.currentTimeMillis() - START_MILLIS) / 1000).append('\n');
+        return out.toString();
+    }
+
+    /**
+     * خلاصه خوانا برای دستور /status
+     */
+    public static String summary() {
+        StringBuilder out = new StringBuilder();
+        for (String method : sortedKeys(API_LATENCY)) {
+            Histogram histogram = API_LATENCY.get(method);
+            out.append("• ").append(method).append(": ").append(histogram.count()).append(" درخواست، p50 ")
+                    .append(millis(histogram.quantile(0.5))).append(" / p99 ").append(millis(histogram.quantile(0.99))).append('\n');
+        }
+
+        StringBuilder errors = new StringBuilder();
+        for (int code = 0; code < ERRORS_BY_CODE.length(); code++) {
+            long count = ERRORS_BY_CODE.get(code);
+            if (count > 0) {
+                errors.append(errors.length() == 0 ? "" : "، ").append(code == 0 ? "شبکه" : Integer.toString(code)).append(": ").append(count);
+            }
+        }
+        out.append("• خطاها: ").append(errors.length() == 0 ? "0" : errors).append('\n');
+        out.append("• تلاش مجدد: ").append(RETRIES.sum()).append('\n');
+        out.append("• حجم آپلود: ").append(String.format(Locale.ROOT, "%.1f", UPLOADED_BYTES.sum() / (1024.0 * 1024.0))).append(" MB\n");
+        out.append("• تأخیر polling (p50): ").append(millis(POLLING_LAG.quantile(0.5))).append('\n');
+        out.append("• خواندن اکسل (p50): ").append(millis(EXCEL_LOAD.quantile(0.5)))
+                .append("، نوشتن: ").append(millis(EXCEL_FLUSH.quantile(0.5)));
+        return out.toString();
+    }
+
+    private static void appendCounter(StringBuilder out, String name, long value) {
+        out.append("# TYPE ").append(name).append(" counter\n");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static List<String> sortedKeys(Map<String, ?> map) {
+        List<String> keys = new ArrayList<>(map.keySet());
+        keys.sort(null);
+        return keys;
+    }
+
+    private static String millis(long nanos) {
+        return nanos / 1_000_000 + " ms";
+    }
+
+    private static String format(double value) {
+        return value == Math.rint(value) && !Double.isInfinite(value) ? Long.toString((long) value) : Double.toString(value);
+    }
+
+    /**
+     * هیستوگرام با سطل‌های لگاریتمی (8 سطل در هر توان 2؛ خطای تخمین صدک حداکثر حدود 6 درصد)
+     * مقادیر بر حسب نانوثانیه ثبت می‌شوند ولی سطل‌بندی با دقت میکروثانیه است.
+     * ثبت هر مقدار فقط دو عمل اتمیک است و هیچ شیئی ساخته نمی‌شود.
+     */
+    public static class Histogram {
+        private static final int SUB_BUCKET_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        // مقادیر کوچک‌تر از 16 میکروثانیه هر کدام سطل جدا دارند
+        private static final int LINEAR_LIMIT = SUB_BUCKETS * 2;
+        private static final int MAX_EXPONENT = 40;
+        private static final int BUCKETS = LINEAR_LIMIT + (MAX_EXPONENT - SUB_BUCKET_BITS - 1) * SUB_BUCKETS;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final LongAdder sumNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        /**
+         * ثبت یک مقدار
+         * @param nanos مدت زمان بر حسب نانوثانیه
+         */
+        public void record(long nanos) {
+            if (nanos < 0) nanos = 0;
+            counts.incrementAndGet(bucketOf(nanos / 1000));
+            sumNanos.add(nanos);
+            if (nanos > maxNanos.get()) {
+                maxNanos.accumulateAndGet(nanos, Math::max);
+            }
+        }
+
+        /**
+         * ثبت زمان سپری‌شده از startNanos (مقدار System.nanoTime در شروع عملیات)
+         */
+        public void recordSince(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        public long count() {
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                total += counts.get(i);
+            }
+            return total;
+        }
+
+        /**
+         * تخمین صدک (مقدار وسط سطلی که صدک در آن قرار دارد) بر حسب نانوثانیه
+         */
+        public long quantile(double q) {
+            long total = count();
+            if (total == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(q * total));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts.get(i);
+                if (seen >= rank) {
+                    long lower = lowerBoundOf(i);
+                    long upper = i + 1 < BUCKETS ? lowerBoundOf(i + 1) : lower;
+                    return Math.min(maxNanos.get(), (lower + upper) / 2 * 1000);
+                }
+            }
+            return maxNanos.get();
+        }
+
+        void appendSummary(StringBuilder out, String name, String labels) {
+            String prefix = labels.isEmpty() ? "{" : "{" + labels + ",";
+            out.append(name).append(prefix).append("quantile=\"0.5\"} ").append(seconds(quantile(0.5))).append('\n');
+            out.append(name).append(prefix).append("quantile=\"0.99\"} ").append(seconds(quantile(0.99))).append('\n');
+            String suffix = labels.isEmpty() ? " " : "{" + labels + "} ";
+            out.append(name).append("_sum").append(suffix).append(seconds(sumNanos.sum())).append('\n');
+            out.append(name).append("_count").append(suffix).append(count()).append('\n');
+        }
+
+        private static String seconds(long nanos) {
+            return Double.toString(nanos / 1e9);
+        }
+
+        static int bucketOf(long micros) {
+            if (micros < LINEAR_LIMIT) return (int) micros;
+            int exponent = 63 - Long.numberOfLeadingZeros(micros);
+            if (exponent >= MAX_EXPONENT) return BUCKETS - 1;
+            int sub = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            return LINEAR_LIMIT + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + sub;
+        }
+
+        static long lowerBoundOf(int bucket) {
+            if (bucket < LINEAR_LIMIT) return bucket;
+            int exponent = (bucket - LINEAR_LIMIT) / SUB_BUCKETS + SUB_BUCKET_BITS + 1;
+            int sub = (bucket - LINEAR_LIMIT) % SUB_BUCKETS;
+            return (1L << exponent) + ((long) sub << (exponent - SUB_BUCKET_BITS));
+        }
+    }
+}
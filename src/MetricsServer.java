@@ -0,0 +1,59 @@
+import org.apache.logging.log4j.Logger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+
+/**
+ * سرور HTTP محلی برای خروجی آمار با فرمت متنی Prometheus
+ * فقط روی localhost گوش می‌دهد: curl http://localhost:9400/metrics
+ */
+public class MetricsServer {
+
+    private static final Logger LOG = AsyncLogging.logger("metrics");
+
+    private final HttpServer server;
+
+    /**
+     * @param port پورت سرور (0 یعنی یک پورت آزاد دلخواه)
+     */
+    public MetricsServer(int port) throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/metrics", this::handle);
+    }
+
+    public void start() {
+        server.start();
+        LOG.info("📈 آمار ربات روی http://localhost:{}/metrics در دسترس است.", port());
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = Metrics.prometheusText().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+}
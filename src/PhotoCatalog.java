@@ -0,0 +1,152 @@
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * فهرست مرتب‌شده و کش‌شده عکس‌های یک پوشه
+ * فهرست یک بار ساخته می‌شود (با کلید عددی، حجم و زمان تغییر هر عکس) و با WatchService
+ * هر وقت فایلی اضافه، حذف یا تغییر داده شود دوباره ساخته می‌شود؛ بنابراین ارسال‌ها دیگر برای هر کاربر
+ * پوشه را لیست و مرتب نمی‌کنند و گرفتن k عکس از ایندکس start فقط O(k) است.
+ */
+public class PhotoCatalog {
+
+    private static final Logger LOG = AsyncLogging.logger("photos");
+
+    private static final Map<String, PhotoCatalog> CATALOGS = new ConcurrentHashMap<>();
+
+    /**
+     * اطلاعات یک عکس
+     * محتوای فایل خوانده نمی‌شود؛ هش و نوع فایل هنگام ارسال (FileIdCache و TelegramClient) تعیین می‌شوند
+     * @param numericKey عدد داخل نام فایل (بدون صفرهای ابتدایی؛ "0" اگر عددی نباشد)
+     */
+    public record Photo(File file, String numericKey, long size, long lastModified) {}
+
+    // مرتب‌سازی بر اساس عدد داخل نام (اول طول، بعد رقم به رقم؛ پس اعداد خیلی بزرگ هم سرریز نمی‌کنند)، سپس نام فایل
+    static final Comparator<Photo> ORDER = Comparator
+            .comparingInt((Photo p) -> p.numericKey().length())
+            .thenComparing(Photo::numericKey)
+            .thenComparing(p -> p.file().getName());
+
+    /**
+     * وضعیت ثابت فهرست: اطلاعات عکس‌ها و فایل‌ها به همان ترتیب (بعد از ساخت تغییر نمی‌کند)
+     * هر دو با یک نوشتن volatile منتشر می‌شوند تا خواننده هیچ‌وقت photos و files دو نسخه مختلف را با هم نبیند
+     */
+    private record Snapshot(Photo[] photos, List<File> files) {}
+
+    private final File folder;
+    private volatile Snapshot snapshot = new Snapshot(new Photo[0], List.of());
+
+    private PhotoCatalog(File folder) {
+        this.folder = folder;
+        rebuild();
+        watch();
+    }
+
+    /**
+     * فهرست مشترک یک پوشه (در اولین استفاده ساخته می‌شود)
+     */
+    public static PhotoCatalog forFolder(String folderPath) {
+        String key = new File(folderPath).getAbsolutePath();
+        return CATALOGS.computeIfAbsent(key, k -> new PhotoCatalog(new File(k)));
+    }
+
+    /**
+     * همه عکس‌ها به ترتیب (لیست فقط‌خواندنی)
+     */
+    public List<File> files() {
+        return snapshot.files();
+    }
+
+    /**
+     * k عکس از ایندکس start (در صورت کمبود، تعداد کمتر)
+     */
+    public List<File> slice(int start, int k) {
+        List<File> current = snapshot.files();
+        int from = Math.min(Math.max(start, 0), current.size());
+        int to = Math.min(from + Math.max(k, 0), current.size());
+        return current.subList(from, to);
+    }
+
+    public int size() {
+        return snapshot.photos().length;
+    }
+
+    /**
+     * ساخت دوباره فهرست (فقط نام، حجم و زمان تغییر فایل‌ها؛ محتوای آن‌ها خوانده نمی‌شود)
+     */
+    private synchronized void rebuild() {
+        File[] listed = folder.listFiles((dir, name) -> name.endsWith(".jpg") || name.endsWith(".png"));
+        if (listed == null) listed = new File[0];
+
+        Photo[] rebuilt = new Photo[listed.length];
+        for (int i = 0; i < listed.length; i++) {
+            rebuilt[i] = describe(listed[i]);
+        }
+        Arrays.sort(rebuilt, ORDER);
+
+        File[] sortedFiles = new File[rebuilt.length];
+        for (int i = 0; i < rebuilt.length; i++) {
+            sortedFiles[i] = rebuilt[i].file();
+        }
+        snapshot = new Snapshot(rebuilt, Collections.unmodifiableList(Arrays.asList(sortedFiles)));
+    }
+
+    private static Photo describe(File file) {
+        return new Photo(file, numericKey(file.getName()), file.length(), file.lastModified());
+    }
+
+    /**
+     * ارقام داخل نام فایل بدون صفرهای ابتدایی (مثلاً "img_010.jpg" -> "10")
+     */
+    static String numericKey(String name) {
+        StringBuilder digits = new StringBuilder();
+        for (int i = 0; i < name.length(); i++) {
+            char ch = name.charAt(i);
+            if (ch >= '0' && ch <= '9' && !(ch == '0' && digits.isEmpty())) {
+                digits.append(ch);
+            }
+        }
+        return digits.isEmpty() ? "0" : digits.toString();
+    }
+
+    /**
+     * گوش دادن به تغییرات پوشه روی یک thread پس‌زمینه
+     */
+    private void watch() {
+        if (!folder.isDirectory()) return;
+        try {
+            WatchService watcher = FileSystems.getDefault().newWatchService();
+            Path dir = folder.toPath();
+            dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+            Thread thread = new Thread(() -> {
+                try {
+                    while (true) {
+                        WatchKey key = watcher.take();
+                        key.pollEvents();
+                        rebuild();
+                        if (!key.reset()) break;
+                    }
+                } catch (InterruptedException | ClosedWatchServiceException ignored) {}
+            }, "photo-catalog-watch");
+            thread.setDaemon(true);
+            thread.start();
+        } catch (IOException e) {
+            LOG.warn("⚠️ امکان پایش پوشه {} وجود ندارد: {}", folder, e.getMessage());
+        }
+    }
+}
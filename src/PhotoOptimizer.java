@@ -0,0 +1,454 @@
+import org.apache.logging.log4j.Logger;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * آماده‌سازی عکس‌ها قبل از آپلود
+ * تلگرام عکس‌ها را دوباره فشرده می‌کند، پس آپلود فایل اصلی چند مگابایتی فقط پهنای باند هدر می‌دهد.
+ * هر عکس یک بار با ImageIO خوانده می‌شود، ضلع بزرگ‌تر آن حداکثر 2560 پیکسل می‌شود، چرخش EXIF (Orientation) روی پیکسل‌ها اعمال می‌شود
+ * و بدون metadata (EXIF، GPS و ...) به JPEG تبدیل و در پوشه کش با نام هش محتوای فایل اصلی ذخیره می‌شود؛
+ * اگر JPEG جدید بزرگ‌تر از JPEG اصلی باشد، همان فایل اصلی بعد از حذف بخش‌های metadata استفاده می‌شود.
+ *
+ * پردازش روی یک ForkJoinPool اختصاصی انجام می‌شود و prewarm کل پوشه را قبل از /send یا ارسال گروهی آماده می‌کند؛
+ * اگر ارسالی به عکسی برسد که در حال پردازش است، منتظر همان پردازش می‌ماند (هر عکس فقط یک بار پردازش می‌شود).
+ */
+public class PhotoOptimizer {
+
+    private static final Logger LOG = AsyncLogging.logger("photos");
+
+    // محدودیت‌های عکس تلگرام: ضلع بزرگ‌تر (تلگرام عکس را تا همین اندازه نگه می‌دارد) و حداکثر حجم sendPhoto
+    static final int MAX_SIDE = 2560;
+    static final long MAX_PHOTO_BYTES = 10L * 1024 * 1024;
+
+    private static final float[] QUALITIES = {0.87f, 0.75f, 0.6f};
+
+    // در نام فایل کش؛ با تغییر تنظیمات بالا عوض شود تا نسخه‌های قدیمی استفاده نشوند
+    private static final String VARIANT_SUFFIX = "-" + MAX_SIDE + "q87-v2.jpg";
+
+    // Orientation در EXIF؛ 1 یعنی بدون چرخش
+    private static final int EXIF_ORIENTATION_TAG = 0x0112;
+    // بخش‌های ابتدای JPEG (حداکثر 64KB هر بخش) معمولاً در همین مقدار اول فایل هستند
+    private static final int HEADER_BYTES = 256 * 1024;
+
+    private static volatile PhotoOptimizer shared;
+
+    /**
+     * نسخه آماده‌شده یک فایل
+     * @param size حجم فایل اصلی در زمان پردازش
+     * @param lastModified زمان تغییر فایل اصلی در زمان پردازش
+     * @param upload فایلی که باید آپلود شود (نسخه کش یا خود فایل اصلی)
+     */
+    private record Variant(long size, long lastModified, File upload) {}
+
+    private final Path cacheDir;
+    private final ForkJoinPool pool;
+
+    // مسیر فایل اصلی -> پردازش انجام‌شده یا در حال انجام
+    private final Map<String, CompletableFuture<Variant>> variants = new ConcurrentHashMap<>();
+
+    /**
+     * @param cacheDir پوشه نسخه‌های آماده‌شده
+     * @param parallelism تعداد thread های پردازش
+     */
+    public PhotoOptimizer(String cacheDir, int parallelism) {
+        this.cacheDir = Path.of(cacheDir);
+        this.pool = new ForkJoinPool(parallelism, pool -> {
+            var thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("photo-optimizer-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+    }
+
+    /**
+     * نمونه مشترک ربات
+     * پوشه کش با -Dbot.photo.cacheDir (پیش‌فرض photo-cache) و موازی‌سازی با -Dbot.photo.parallelism
+     * (پیش‌فرض تعداد هسته‌ها، حداکثر 4 تا حافظه برای عکس‌های خیلی بزرگ کافی باشد) تنظیم می‌شود
+     */
+    public static PhotoOptimizer shared() {
+        PhotoOptimizer instance = shared;
+        if (instance == null) {
+            synchronized (PhotoOptimizer.class) {
+                instance = shared;
+                if (instance == null) {
+                    int parallelism = Integer.getInteger("bot.photo.parallelism", Math.min(4, Runtime.getRuntime().availableProcessors()));
+                    instance = shared = new PhotoOptimizer(System.getProperty("bot.photo.cacheDir", "photo-cache"), parallelism);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * فایلی که به جای عکس اصلی باید آپلود شود
+     * اگر هنوز آماده نشده باشد همین‌جا (یا با صبر برای پردازش در جریان) آماده می‌شود؛
+     * در صورت هر خطا خود فایل اصلی برگردانده می‌شود
+     */
+    public File optimized(File original) {
+        return variantFor(original).join().upload();
+    }
+
+    /**
+     * آماده‌سازی موازی همه عکس‌های یک پوشه در پس‌زمینه (بدون صبر برای پایان آن)
+     * عکس‌هایی که قبلاً آماده شده‌اند دوباره پردازش نمی‌شوند
+     */
+    public void prewarm(String folderPath) {
+        Thread.ofVirtual().name("photo-prewarm").start(() -> {
+            long start = System.nanoTime();
+            List<File> photos = PhotoCatalog.forFolder(folderPath).files();
+            if (photos.isEmpty()) return;
+            pool.invoke(new PrewarmTask(photos, 0, photos.size()));
+            LOG.info("🖼️ {} عکس برای ارسال آماده شد ({} میلی‌ثانیه).", photos.size(), (System.nanoTime() - start) / 1_000_000);
+        });
+    }
+
+    /**
+     * تقسیم لیست عکس‌ها بین thread های ForkJoinPool
+     */
+    private class PrewarmTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        // وظیفه فقط در ForkJoinPool اجرا می‌شود و هیچ‌وقت serialize نمی‌شود
+        private final transient List<File> photos;
+        private final int from;
+        private final int to;
+
+        PrewarmTask(List<File> photos, int from, int to) {
+            this.photos = photos;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                variantFor(photos.get(from)).join();
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new PrewarmTask(photos, from, middle), new PrewarmTask(photos, middle, to));
+        }
+    }
+
+    /**
+     * پردازش موجود یا شروع پردازش جدید برای یک فایل
+     * اگر فایل اصلی بعد از پردازش تغییر کرده باشد، دوباره پردازش می‌شود
+     */
+    private CompletableFuture<Variant> variantFor(File original) {
+        String key = original.getAbsolutePath();
+        CompletableFuture<Variant> existing = variants.get(key);
+        if (existing != null && isCurrent(existing, original)) {
+            return existing;
+        }
+
+        CompletableFuture<Variant> created = new CompletableFuture<>();
+        boolean owner = existing == null ? variants.putIfAbsent(key, created) == null : variants.replace(key, existing, created);
+        if (!owner) {
+            // thread دیگری همزمان پردازش را شروع کرد
+            return variants.get(key);
+        }
+
+        if (ForkJoinTask.getPool() == pool) {
+            // داخل PrewarmTask؛ همین thread پردازش می‌کند
+            complete(created, original);
+        } else {
+            pool.execute(() -> complete(created, original));
+        }
+        return created;
+    }
+
+    private static boolean isCurrent(CompletableFuture<Variant> future, File original) {
+        if (!future.isDone()) return true;
+        Variant variant = future.join();
+        return variant.size() == original.length() && variant.lastModified() == original.lastModified();
+    }
+
+    private void complete(CompletableFuture<Variant> future, File original) {
+        long size = original.length();
+        long lastModified = original.lastModified();
+        try {
+            future.complete(new Variant(size, lastModified, prepare(original).toFile()));
+        } catch (Exception e) {
+            LOG.warn("⚠️ آماده‌سازی عکس {} ناموفق بود؛ فایل اصلی ارسال می‌شود: {}", original.getName(), e.getMessage());
+        } finally {
+            // اگر prepare موفق نبود (حتی با OutOfMemoryError) فراخواننده‌ها منتظر نمی‌مانند
+            future.complete(new Variant(size, lastModified, original));
+        }
+    }
+
+    /**
+     * ساخت نسخه آماده‌شده در کش دیسک (اگر از قبل وجود نداشته باشد)
+     */
+    private Path prepare(File original) throws IOException {
+        Path target = cacheDir.resolve(FileIdCache.hashOf(original) + VARIANT_SUFFIX);
+        if (Files.exists(target)) {
+            return target;
+        }
+
+        long start = System.nanoTime();
+        Decoded decoded = readScaled(original);
+        byte[] jpeg = encodeJpeg(decoded.image());
+        Metrics.PHOTO_OPTIMIZE.recordSince(start);
+
+        String name = original.getName().toLowerCase();
+        if (!decoded.resized() && decoded.orientation() == 1 && (name.endsWith(".jpg") || name.endsWith(".jpeg"))
+                && original.length() <= jpeg.length) {
+            // فشرده‌سازی دوباره JPEG را بزرگ‌تر می‌کرد؛ همان فایل اصلی بدون metadata در کش قرار می‌گیرد
+            byte[] stripped = stripMetadata(Files.readAllBytes(original.toPath()));
+            if (stripped != null && stripped.length <= jpeg.length) {
+                jpeg = stripped;
+            }
+        }
+
+        Files.createDirectories(cacheDir);
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.write(tmp, jpeg);
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return target;
+    }
+
+    /**
+     * @param resized آیا اندازه عکس کوچک شده است
+     * @param orientation مقدار Orientation در EXIF فایل اصلی (روی image اعمال شده است)
+     */
+    private record Decoded(BufferedImage image, boolean resized, int orientation) {}
+
+    /**
+     * خواندن عکس بدون metadata، کوچک کردن آن تا MAX_SIDE و اعمال چرخش EXIF
+     * عکس‌های خیلی بزرگ هنگام خواندن با subsampling تا حدود 2 تا 4 برابر اندازه نهایی خوانده می‌شوند
+     * (حافظه و زمان خیلی کمتر) و بقیه کوچک‌سازی با نصف کردن‌های پی‌درپی bilinear انجام می‌شود تا کیفیت حفظ شود
+     */
+    static Decoded readScaled(File file) throws IOException {
+        int orientation = exifOrientation(readHeader(file));
+        try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+            Iterator<ImageReader> readers = in == null ? null : ImageIO.getImageReaders(in);
+            if (readers == null || !readers.hasNext()) {
+                throw new IOException("فرمت عکس پشتیبانی نمی‌شود");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int longest = Math.max(reader.getWidth(0), reader.getHeight(0));
+                ImageReadParam param = reader.getDefaultReadParam();
+                int subsampling = longest / (2 * MAX_SIDE);
+                if (subsampling > 1) {
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                }
+                BufferedImage image = reader.read(0, param);
+                return new Decoded(orient(scaleDown(image), orientation), longest > MAX_SIDE, orientation);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * کوچک کردن تا MAX_SIDE (هر مرحله حداکثر نصف) و تبدیل به RGB بدون شفافیت (JPEG کانال alpha ندارد)
+     */
+    private static BufferedImage scaleDown(BufferedImage image) {
+        do {
+            int width = image.getWidth();
+            int height = image.getHeight();
+            double factor = Math.max(0.5, Math.min(1.0, MAX_SIDE / (double) Math.max(width, height)));
+            int scaledWidth = Math.max(1, (int) Math.round(width * factor));
+            int scaledHeight = Math.max(1, (int) Math.round(height * factor));
+            if (factor == 1.0 && image.getType() == BufferedImage.TYPE_INT_RGB) {
+                return image;
+            }
+
+            BufferedImage scaled = new BufferedImage(scaledWidth, scaledHeight, BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = scaled.createGraphics();
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            // پس‌زمینه سفید برای قسمت‌های شفاف PNG
+            graphics.drawImage(image, 0, 0, scaledWidth, scaledHeight, Color.WHITE, null);
+            graphics.dispose();
+            image = scaled;
+        } while (Math.max(image.getWidth(), image.getHeight()) > MAX_SIDE);
+        return image;
+    }
+
+    private static byte[] readHeader(File file) throws IOException {
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            return in.readNBytes(HEADER_BYTES);
+        }
+    }
+
+    /**
+     * مقدار Orientation (1 تا 8) از بخش APP1/Exif یک JPEG؛ برای فرمت‌های دیگر یا EXIF نامعتبر 1
+     */
+    static int exifOrientation(byte[] data) {
+        if (data.length < 4 || (data[0] & 0xFF) != 0xFF || (data[1] & 0xFF) != 0xD8) return 1;
+        int pos = 2;
+        while (pos + 4 <= data.length && (data[pos] & 0xFF) == 0xFF) {
+            int marker = data[pos + 1] & 0xFF;
+            if (marker == 0xFF) {
+                pos++;
+                continue;
+            }
+            if (marker == 0xDA || marker == 0xD9) break;
+            int length = readUnsigned(data, pos + 2, 2, false);
+            int start = pos + 4;
+            int end = Math.min(data.length, pos + 2 + length);
+            if (marker == 0xE1 && end - start > 14 && new String(data, start, 6, StandardCharsets.ISO_8859_1).equals("Exif\0\0")) {
+                return orientationFromTiff(data, start + 6, end);
+            }
+            pos += 2 + length;
+        }
+        return 1;
+    }
+
+    /**
+     * جستجوی تگ Orientation در IFD0 ساختار TIFF داخل EXIF
+     */
+    private static int orientationFromTiff(byte[] data, int tiff, int end) {
+        boolean little = data[tiff] == 'I' && data[tiff + 1] == 'I';
+        if (!little && !(data[tiff] == 'M' && data[tiff + 1] == 'M')) return 1;
+        long ifd = tiff + (readUnsigned(data, tiff + 4, 4, little) & 0xFFFFFFFFL);
+        if (ifd + 2 > end) return 1;
+        int entries = readUnsigned(data, (int) ifd, 2, little);
+        for (int i = 0; i < entries; i++) {
+            int entry = (int) ifd + 2 + i * 12;
+            if (entry + 12 > end) break;
+            if (readUnsigned(data, entry, 2, little) == EXIF_ORIENTATION_TAG) {
+                int value = readUnsigned(data, entry + 8, 2, little);
+                return value >= 1 && value <= 8 ? value : 1;
+            }
+        }
+        return 1;
+    }
+
+    private static int readUnsigned(byte[] data, int offset, int bytes, boolean little) {
+        int value = 0;
+        for (int i = 0; i < bytes; i++) {
+            int b = data[offset + (little ? bytes - 1 - i : i)] & 0xFF;
+            value = (value << 8) | b;
+        }
+        return value;
+    }
+
+    /**
+     * اعمال Orientation روی پیکسل‌ها (image از نوع TYPE_INT_RGB)
+     * 2 و 4 قرینه افقی و عمودی، 3 چرخش 180 درجه، 6 و 8 چرخش 90 درجه ساعت‌گرد و پادساعت‌گرد، 5 و 7 قرینه نسبت به قطرها
+     */
+    static BufferedImage orient(BufferedImage image, int orientation) {
+        if (orientation <= 1 || orientation > 8) return image;
+        int width = image.getWidth();
+        int height = image.getHeight();
+        boolean swap = orientation >= 5;
+        BufferedImage oriented = new BufferedImage(swap ? height : width, swap ? width : height, BufferedImage.TYPE_INT_RGB);
+        int[] source = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        int[] target = ((DataBufferInt) oriented.getRaster().getDataBuffer()).getData();
+        int targetWidth = oriented.getWidth();
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int tx;
+                int ty;
+                switch (orientation) {
+                    case 2 -> { tx = width - 1 - x; ty = y; }
+                    case 3 -> { tx = width - 1 - x; ty = height - 1 - y; }
+                    case 4 -> { tx = x; ty = height - 1 - y; }
+                    case 5 -> { tx = y; ty = x; }
+                    case 6 -> { tx = height - 1 - y; ty = x; }
+                    case 7 -> { tx = height - 1 - y; ty = width - 1 - x; }
+                    default -> { tx = y; ty = width - 1 - x; }
+                }
+                target[ty * targetWidth + tx] = source[y * width + x];
+            }
+        }
+        return oriented;
+    }
+
+    /**
+     * حذف بخش‌های metadata از یک JPEG بدون فشرده‌سازی دوباره:
+     * APP1 تا APP15 (EXIF، GPS، XMP، IPTC و ...) و توضیحات (COM) حذف می‌شوند؛ APP0 (JFIF)، پروفایل رنگ ICC (APP2)
+     * و APP14 (Adobe، برای رمزگشایی درست رنگ‌ها) باقی می‌مانند
+     * @return JPEG بدون metadata یا null اگر ساختار فایل قابل تشخیص نباشد
+     */
+    static byte[] stripMetadata(byte[] data) {
+        if (data.length < 4 || (data[0] & 0xFF) != 0xFF || (data[1] & 0xFF) != 0xD8) return null;
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length);
+        out.write(data, 0, 2);
+        int pos = 2;
+        while (pos + 4 <= data.length) {
+            if ((data[pos] & 0xFF) != 0xFF) return null;
+            int marker = data[pos + 1] & 0xFF;
+            if (marker == 0xFF) {
+                pos++;
+                continue;
+            }
+            if (marker == 0xDA) {
+                // شروع داده تصویر: بقیه فایل بدون تغییر
+                out.write(data, pos, data.length - pos);
+                return out.toByteArray();
+            }
+            int length = readUnsigned(data, pos + 2, 2, false);
+            if (length < 2 || pos + 2 + length > data.length) return null;
+            boolean metadata = marker == 0xFE || (marker >= 0xE1 && marker <= 0xEF && marker != 0xEE
+                    && !(marker == 0xE2 && isIccProfile(data, pos + 4, length - 2)));
+            if (!metadata) {
+                out.write(data, pos, 2 + length);
+            }
+            pos += 2 + length;
+        }
+        return null;
+    }
+
+    private static boolean isIccProfile(byte[] data, int start, int length) {
+        return length >= 12 && new String(data, start, 12, StandardCharsets.ISO_8859_1).equals("ICC_PROFILE\0");
+    }
+
+    /**
+     * فشرده‌سازی JPEG بدون metadata؛ اگر حجم از MAX_PHOTO_BYTES بیشتر شد با کیفیت کمتر تکرار می‌شود
+     */
+    private static byte[] encodeJpeg(BufferedImage image) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try {
+            byte[] jpeg = null;
+            for (float quality : QUALITIES) {
+                ImageWriteParam param = writer.getDefaultWriteParam();
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(quality);
+
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(256 * 1024);
+                try (ImageOutputStream out = ImageIO.createImageOutputStream(bytes)) {
+                    writer.setOutput(out);
+                    writer.write(null, new IIOImage(image, null, null), param);
+                }
+                jpeg = bytes.toByteArray();
+                if (jpeg.length <= MAX_PHOTO_BYTES) break;
+            }
+            return jpeg;
+        } finally {
+            writer.dispose();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * پیام پیشرفت یک ارسال طولانی (/send، لیست اکسل، اعلان آنلاین شدن)
+ * به جای پیام‌های جداگانه شروع و پایان، یک پیام ارسال می‌شود و همان پیام با editMessageText به‌روز می‌شود:
+ * تعداد ارسال‌شده و ناموفق، نرخ ارسال و زمان تقریبی باقی‌مانده.
+ *
+ * ویرایش‌ها محدود هستند تا سهم خود ارسال‌ها را مصرف نکنند:
+ * حداکثر یک ویرایش در هر 2 ثانیه (-Dbot.progress.intervalMillis)، فقط اگر از ویرایش قبلی پیشرفتی ثبت شده باشد
+ * و ویرایش قبلی تمام شده باشد، و فقط اگر محدودیت همان چت (Broadcaster) همین حالا توکن آزاد داشته باشد؛
+ * اگر ارسالی منتظر همان چت باشد، ویرایش به نوبت بعد می‌افتد.
+ */
+public class ProgressMessage {
+
+    private static final long INTERVAL_MILLIS = Long.getLong("bot.progress.intervalMillis", 2000);
+
+    private static final ScheduledExecutorService TICKER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "progress-edit");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final String botToken;
+    private final long chatId;
+    private final String title;
+    // 0 یعنی پیام اولیه ارسال نشد و فقط پیام پایانی ارسال می‌شود
+    private final long messageId;
+    private final long startNanos = System.nanoTime();
+
+    private final AtomicInteger total = new AtomicInteger();
+    private final AtomicInteger sent = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+
+    // یک ویرایش در حال ارسال؛ ویرایش بعدی تا پایان آن صبر نمی‌کند و رد می‌شود
+    private final AtomicBoolean editing = new AtomicBoolean();
+    private final ScheduledFuture<?> ticker;
+    private volatile boolean finished;
+
+    // وضعیت (ارسال‌شده/ناموفق/کل) که آخرین بار نمایش داده شد؛ فقط با editing
+    private String shownState = "";
+
+    private ProgressMessage(String botToken, long chatId, String title, long messageId) {
+        this.botToken = botToken;
+        this.chatId = chatId;
+        this.title = title;
+        this.messageId = messageId;
+        this.ticker = messageId == 0 ? null
+                : TICKER.scheduleWithFixedDelay(this::tick, INTERVAL_MILLIS, INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * ارسال پیام اولیه (در صف thread جاری از SendScheduler) و شروع به‌روزرسانی‌های دوره‌ای
+     * @param title متن پیام اولیه که بالای آمار نمایش داده می‌شود
+     */
+    public static ProgressMessage start(String botToken, long chatId, String title) {
+        long messageId = MessagePhotoSender.sendMessageForId(botToken, chatId, title);
+        return new ProgressMessage(botToken, chatId, title, messageId);
+    }
+
+    public String title() {
+        return title;
+    }
+
+    /**
+     * اضافه کردن به تعداد کل موارد (برای ارسال‌هایی که فهرستشان استریمی خوانده می‌شود، به تدریج)
+     */
+    public void addTotal(int count) {
+        total.addAndGet(count);
+    }
+
+    /**
+     * ثبت نتیجه یک مورد (بدون ارسال درخواست؛ ویرایش در نوبت بعدی انجام می‌شود)
+     */
+    public void record(boolean ok) {
+        (ok ? sent : failed).incrementAndGet();
+    }
+
+    /**
+     * توقف به‌روزرسانی‌ها و نمایش نتیجه نهایی
+     * ویرایش پایانی منتظر توکن همان چت می‌ماند (رد نمی‌شود)؛ اگر ویرایش ممکن نباشد، نتیجه به صورت پیام جدید ارسال می‌شود
+     * @param headline خط اول پیام نهایی (به جای title)
+     */
+    public void finish(String headline) {
+        finished = true;
+        if (ticker != null) {
+            ticker.cancel(false);
+        }
+        String text = headline + "\n" + summary();
+        try {
+            if (messageId == 0) {
+                MessagePhotoSender.sendMessage(botToken, chatId, text);
+                return;
+            }
+            // ویرایش پایانی باید بعد از ویرایش در حال ارسال برسد
+            while (!editing.compareAndSet(false, true)) {
+                Thread.sleep(10);
+            }
+            try {
+                Broadcaster.limiterFor(chatId).acquire();
+                if (!MessagePhotoSender.editMessageText(botToken, chatId, messageId, text)) {
+                    MessagePhotoSender.sendMessage(botToken, chatId, text);
+                }
+            } finally {
+                editing.set(false);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void tick() {
+        if (finished || !editing.compareAndSet(false, true)) return;
+        String state = sent.get() + "/" + failed.get() + "/" + total.get();
+        if (state.equals(shownState) || !Broadcaster.limiterFor(chatId).tryAcquire()) {
+            editing.set(false);
+            return;
+        }
+
+        String text = title + "\n" + progressLine();
+        Thread.ofVirtual().name("progress-edit-" + chatId).start(() -> {
+            try {
+                if (!finished && MessagePhotoSender.editMessageText(botToken, chatId, messageId, text)) {
+                    shownState = state;
+                }
+            } finally {
+                editing.set(false);
+            }
+        });
+    }
+
+    private String progressLine() {
+        int ok = sent.get();
+        int bad = failed.get();
+        int done = ok + bad;
+        int all = Math.max(total.get(), done);
+        double rate = rate(done);
+        String line = "📊 " + done + "/" + all + " (✅ " + ok + "، ❌ " + bad + ")\n"
+                + "⚡ " + String.format("%.1f", rate) + " در ثانیه";
+        if (rate > 0 && all > done) {
+            line += "، ⏳ حدود " + duration((long) Math.ceil((all - done) / rate)) + " باقی‌مانده";
+        }
+        return line;
+    }
+
+    private String summary() {
+        int ok = sent.get();
+        int bad = failed.get();
+        int done = ok + bad;
+        long seconds = Math.round((System.nanoTime() - startNanos) / 1e9);
+        String line = "✅ " + ok + " موفق، ❌ " + bad + " ناموفق در " + duration(seconds)
+                + " (" + String.format("%.1f", rate(done)) + " در ثانیه)";
+        int skipped = total.get() - done;
+        if (skipped > 0) {
+            line += "\n⏹️ " + skipped + " ارسال نشد";
+        }
+        return line;
+    }
+
+    private double rate(int done) {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        return seconds > 0 ? done / seconds : 0;
+    }
+
+    private static String duration(long seconds) {
+        if (seconds < 60) return seconds + " ثانیه";
+        if (seconds < 3600) return seconds / 60 + " دقیقه و " + seconds % 60 + " ثانیه";
+        return seconds / 3600 + " ساعت و " + seconds % 3600 / 60 + " دقیقه";
+    }
+}
@@ -0,0 +1,101 @@
+import java.util.concurrent.TimeUnit;
+
+/**
+ * محدودکننده نرخ به روش سطل توکن (Token Bucket)
+ * هر ارسال یک توکن مصرف می‌کند؛ اگر توکنی باقی نمانده باشد، فراخواننده تا پر شدن سطل صبر می‌کند
+ */
+public class RateLimiter {
+
+    private final double capacity;
+    private double permitsPerNano;
+    private double tokens;
+    private long lastRefillNanos;
+    private long lastAcquireNanos;
+
+    /**
+     * @param permits تعداد مجاز در هر بازه
+     * @param periodNanos طول بازه بر حسب نانوثانیه
+     * @param capacity حداکثر تعداد توکن ذخیره‌شده (اندازه burst)
+     */
+    public RateLimiter(double permits, long periodNanos, double capacity) {
+        this.capacity = capacity;
+        this.permitsPerNano = permits / periodNanos;
+        this.tokens = capacity;
+        this.lastRefillNanos = System.nanoTime();
+        this.lastAcquireNanos = lastRefillNanos;
+    }
+
+    public static RateLimiter perSecond(double permits, double capacity) {
+        return new RateLimiter(permits, TimeUnit.SECONDS.toNanos(1), capacity);
+    }
+
+    public static RateLimiter perMinute(double permits, double capacity) {
+        return new RateLimiter(permits, TimeUnit.MINUTES.toNanos(1), capacity);
+    }
+
+    /**
+     * گرفتن یک توکن؛ در صورت نیاز تا آزاد شدن توکن صبر می‌کند
+     * خواب بیرون از قفل انجام می‌شود تا thread های دیگر (مخصوصاً virtual thread ها) معطل نشوند
+     */
+    public void acquire() throws InterruptedException {
+        long waitNanos = reserve();
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * گرفتن یک توکن فقط اگر همین حالا آزاد باشد (بدون صبر و بدون رزرو)
+     * اگر کسی در حال صبر برای توکن باشد، سطل منفی است و این متد false برمی‌گرداند
+     */
+    public synchronized boolean tryAcquire() {
+        refill(System.nanoTime());
+        if (tokens < 1) return false;
+        tokens -= 1;
+        lastAcquireNanos = lastRefillNanos;
+        return true;
+    }
+
+    /**
+     * آیا سطل پر است و از idleNanos پیش توکنی گرفته نشده؟
+     * چنین محدودکننده‌ای با یک محدودکننده تازه فرقی ندارد و می‌توان آن را دور انداخت
+     */
+    public synchronized boolean isIdle(long idleNanos) {
+        long now = System.nanoTime();
+        refill(now);
+        return tokens >= capacity && now - lastAcquireNanos >= idleNanos;
+    }
+
+    /**
+     * تغییر نرخ (مثلاً توسط کنترل‌کننده تطبیقی نرخ)
+     * @param permitsPerSecond نرخ جدید در ثانیه
+     */
+    public synchronized void setRate(double permitsPerSecond) {
+        refill(System.nanoTime());
+        permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+    }
+
+    /**
+     * نرخ فعلی در ثانیه
+     */
+    public synchronized double getRate() {
+        return permitsPerNano * TimeUnit.SECONDS.toNanos(1);
+    }
+
+    /**
+     * رزرو یک توکن و برگرداندن مدت زمانی که باید تا رسیدن نوبت صبر کرد
+     */
+    private synchronized long reserve() {
+        refill(System.nanoTime());
+        lastAcquireNanos = lastRefillNanos;
+
+        tokens -= 1;
+        if (tokens >= 0) return 0;
+        return (long) (-tokens / permitsPerNano);
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * permitsPerNano);
+        lastRefillNanos = now;
+    }
+}
@@ -0,0 +1,77 @@
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * کنترل تطبیقی نرخ کلی ارسال (AIMD)
+ * با هر ارسال موفق نرخ کمی افزایش می‌یابد (افزایش جمعی) و با هر پاسخ 429 نصف می‌شود (کاهش ضربی)،
+ * تا نرخ ارسال خودش را با محدودیت واقعی تلگرام تنظیم کند.
+ * پاسخ‌های 429 یک موج (درخواست‌هایی که همزمان در راه بودند) فقط یک بار نرخ را کم می‌کنند: بعد از هر کاهش،
+ * 429 ها تا پایان retry_after آن پاسخ (حداقل یک ثانیه) نادیده گرفته می‌شوند.
+ */
+public class SendRateController {
+
+    private static final Logger LOG = AsyncLogging.logger("send");
+
+    private static final double MAX_RATE = 30;
+    private static final double MIN_RATE = 1;
+    private static final double INCREASE_PER_SUCCESS = 0.05;
+    private static final double DECREASE_FACTOR = 0.5;
+    private static final long MIN_DECREASE_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final SendRateController GLOBAL = new SendRateController(RateLimiter.perSecond(MAX_RATE, MAX_RATE));
+
+    private final RateLimiter limiter;
+    private double rate;
+    // تا این زمان (System.nanoTime) پاسخ‌های 429 نرخ را دوباره کم نمی‌کنند
+    private long decreaseWindowEnd;
+    private boolean decreased;
+
+    public SendRateController(RateLimiter limiter) {
+        this.limiter = limiter;
+        this.rate = limiter.getRate();
+    }
+
+    /**
+     * کنترل‌کننده نرخ کلی ربات (مشترک بین همه ارسال‌ها)
+     */
+    public static SendRateController global() {
+        return GLOBAL;
+    }
+
+    /**
+     * گرفتن نوبت ارسال با نرخ فعلی
+     */
+    public void acquire() throws InterruptedException {
+        limiter.acquire();
+    }
+
+    public synchronized void onSuccess() {
+        if (rate < MAX_RATE) {
+            rate = Math.min(MAX_RATE, rate + INCREASE_PER_SUCCESS);
+            limiter.setRate(rate);
+        }
+    }
+
+    /**
+     * @param retryAfterSeconds مقدار retry_after پاسخ 429 (یا -1 اگر نداشت)
+     */
+    public synchronized void onThrottled(int retryAfterSeconds) {
+        long now = System.nanoTime();
+        if (decreased && now - decreaseWindowEnd < 0) {
+            return;
+        }
+        decreased = true;
+        decreaseWindowEnd = now + Math.max(MIN_DECREASE_WINDOW_NANOS, TimeUnit.SECONDS.toNanos(retryAfterSeconds));
+
+        double previous = rate;
+        rate = Math.max(MIN_RATE, rate * DECREASE_FACTOR);
+        limiter.setRate(rate);
+        LOG.warn("🐢 تلگرام محدودیت اعمال کرد؛ نرخ ارسال از {} به {} پیام در ثانیه کاهش یافت.",
+                String.format("%.1f", previous), String.format("%.1f", rate));
+    }
+
+    public synchronized double currentRate() {
+        return rate;
+    }
+}
@@ -0,0 +1,240 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * زمان‌بند ارسال‌های خروجی با صف‌های اولویت‌دار
+ * هر درخواست ارسال (sendMessage، sendPhoto، ...) قبل از رفتن به تلگرام یک نوبت از این زمان‌بند می‌گیرد.
+ * نوبت‌ها با نرخ SendRateController (تطبیقی) صادر می‌شوند و بین صف‌ها به نسبت وزنشان تقسیم می‌شوند
+ * (stride scheduling)، تا پاسخ /start یا /status پشت هزاران ارسال گروهی نماند ولی ارسال گروهی هم کامل متوقف نشود.
+ * اگر صفی که درخواست منتظر دارد بیش از حد مجاز خودش نوبتی نگرفته باشد (مثلاً وقتی نرخ بعد از 429 خیلی پایین آمده)،
+ * نوبت بعدی بدون توجه به وزن‌ها به آن می‌رسد.
+ *
+ * صف هر ارسال از thread جاری خوانده می‌شود (پیش‌فرض INTERACTIVE) و با lane() برای یک بخش از کد تغییر می‌کند:
+ * SendScheduler.LaneScope scope = SendScheduler.lane(SendScheduler.Lane.BULK);
+ * try { ... } finally { scope.close(); }
+ *
+ * thread صدور نوبت‌ها (daemon) با اولین acquire شروع می‌شود و close() آن را متوقف می‌کند.
+ */
+public class SendScheduler {
+
+    /**
+     * صف‌های ارسال به ترتیب اولویت
+     */
+    public enum Lane {
+        // پاسخ مستقیم به دستورات کاربران
+        INTERACTIVE("interactive", "پاسخ‌ها", 16, 500),
+        // عکس‌هایی که کاربر با /send درخواست کرده
+        USER_SEND("user_send", "/send", 4, 2000),
+        // ارسال گروهی (لیست اکسل، اعلان آنلاین شدن)
+        BULK("bulk", "گروهی", 1, 10_000);
+
+        final String metricName;
+        final String label;
+        final int weight;
+        final long maxWaitNanos;
+
+        Lane(String metricName, String label, int weight, long maxWaitMillis) {
+            this.metricName = metricName;
+            this.label = label;
+            this.weight = weight;
+            this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        }
+    }
+
+    private static final long STRIDE = 1 << 20;
+
+    private static final SendScheduler GLOBAL = new SendScheduler(SendRateController.global());
+
+    private static final ThreadLocal<Lane> CURRENT_LANE = ThreadLocal.withInitial(() -> Lane.INTERACTIVE);
+
+    private record Waiter(CompletableFuture<Void> granted, long enqueuedNanos) {}
+
+    private final SendRateController rate;
+
+    // صف هر Lane به ترتیب ordinal (با قفل this)
+    private final List<ArrayDeque<Waiter>> queues = new ArrayList<>();
+    private final long[] passes = new long[Lane.values().length];
+    // آخرین زمانی که صف نوبت گرفت (یا از خالی به پر تبدیل شد)
+    private final long[] lastServed = new long[Lane.values().length];
+    private long virtualTime;
+    private int waiting;
+    // thread صدور نوبت‌ها؛ با اولین درخواست شروع و با close() متوقف می‌شود
+    private Thread dispatcher;
+    private boolean closed;
+
+    private final Metrics.Histogram[] waitTimes = new Metrics.Histogram[Lane.values().length];
+
+    public SendScheduler(SendRateController rate) {
+        this.rate = rate;
+        for (Lane lane : Lane.values()) {
+            queues.add(new ArrayDeque<>());
+            waitTimes[lane.ordinal()] = Metrics.sendWait(lane.metricName);
+        }
+    }
+
+    /**
+     * زمان‌بند مشترک همه ارسال‌های ربات
+     */
+    public static SendScheduler global() {
+        return GLOBAL;
+    }
+
+    /**
+     * تعیین صف ارسال‌های thread جاری تا بسته شدن LaneScope
+     */
+    public static LaneScope lane(Lane lane) {
+        Lane previous = CURRENT_LANE.get();
+        CURRENT_LANE.set(lane);
+        return () -> CURRENT_LANE.set(previous);
+    }
+
+    /**
+     * بازگرداندن صف قبلی thread (بدون استثنای checked)
+     */
+    public interface LaneScope extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * گرفتن نوبت ارسال در صف thread جاری
+     */
+    public void acquire() throws InterruptedException {
+        acquire(CURRENT_LANE.get());
+    }
+
+    /**
+     * گرفتن نوبت ارسال در یک صف مشخص؛ تا رسیدن نوبت صبر می‌کند
+     */
+    public void acquire(Lane lane) throws InterruptedException {
+        Waiter waiter = new Waiter(new CompletableFuture<>(), System.nanoTime());
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("زمان‌بند ارسال بسته شده است");
+            }
+            if (dispatcher == null) {
+                dispatcher = Thread.ofPlatform().name("send-scheduler").daemon().start(this::run);
+            }
+            ArrayDeque<Waiter> queue = queues.get(lane.ordinal());
+            if (queue.isEmpty()) {
+                // صفی که خالی بوده اعتبار دوره بیکاری‌اش را نگه نمی‌دارد
+                passes[lane.ordinal()] = Math.max(passes[lane.ordinal()], virtualTime);
+                lastServed[lane.ordinal()] = waiter.enqueuedNanos();
+            }
+            queue.add(waiter);
+            waiting++;
+            notifyAll();
+        }
+
+        try {
+            waiter.granted().get();
+        } catch (InterruptedException e) {
+            // اگر نوبت همزمان صادر شده باشد cancel بی‌اثر است و نوبت مصرف‌شده حساب می‌شود
+            if (waiter.granted().cancel(false)) {
+                throw e;
+            }
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | CancellationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * توقف thread صدور نوبت‌ها؛ درخواست‌های منتظر و بعدی با IllegalStateException رد می‌شوند
+     */
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        if (dispatcher != null) {
+            dispatcher.interrupt();
+        }
+        for (ArrayDeque<Waiter> queue : queues) {
+            for (Waiter waiter : queue) {
+                waiter.granted().completeExceptionally(new IllegalStateException("زمان‌بند ارسال بسته شده است"));
+            }
+            queue.clear();
+        }
+        waiting = 0;
+    }
+
+    /**
+     * تعداد درخواست‌های منتظر در یک صف
+     */
+    public synchronized int depth(Lane lane) {
+        return queues.get(lane.ordinal()).size();
+    }
+
+    /**
+     * خلاصه خوانا برای /status، مثلاً: پاسخ‌ها 0، /send 12، گروهی 3400
+     */
+    public synchronized String depthSummary() {
+        StringBuilder out = new StringBuilder();
+        for (Lane lane : Lane.values()) {
+            out.append(out.length() == 0 ? "" : "، ").append(lane.label).append(' ').append(depth(lane));
+        }
+        return out.toString();
+    }
+
+    /**
+     * حلقه صدور نوبت‌ها: صبر برای اولین درخواست، گرفتن توکن از کنترل نرخ، و دادن آن به صف انتخاب‌شده
+     */
+    private void run() {
+        while (true) {
+            try {
+                synchronized (this) {
+                    while (waiting == 0) {
+                        wait();
+                    }
+                }
+                rate.acquire();
+
+                // درخواست‌هایی که در این فاصله لغو شده‌اند نوبت را هدر نمی‌دهند
+                Waiter waiter;
+                do {
+                    waiter = next();
+                } while (waiter != null && !waiter.granted().complete(null));
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * انتخاب درخواست بعدی: ابتدا صفی که از حد انتظارش بدون نوبت گذشته (بیشترین تأخیر)، وگرنه صف با کمترین pass
+     */
+    private synchronized Waiter next() {
+        long now = System.nanoTime();
+        int chosen = -1;
+        long mostOverdue = 0;
+        for (Lane lane : Lane.values()) {
+            if (queues.get(lane.ordinal()).isEmpty()) continue;
+            long overdue = now - lastServed[lane.ordinal()] - lane.maxWaitNanos;
+            if (overdue > mostOverdue) {
+                mostOverdue = overdue;
+                chosen = lane.ordinal();
+            }
+        }
+        if (chosen < 0) {
+            for (Lane lane : Lane.values()) {
+                if (!queues.get(lane.ordinal()).isEmpty() && (chosen < 0 || passes[lane.ordinal()] < passes[chosen])) {
+                    chosen = lane.ordinal();
+                }
+            }
+        }
+        if (chosen < 0) return null;
+
+        Lane lane = Lane.values()[chosen];
+        virtualTime = passes[chosen];
+        passes[chosen] += STRIDE / lane.weight;
+        lastServed[chosen] = now;
+        Waiter waiter = queues.get(chosen).poll();
+        waiting--;
+        waitTimes[chosen].recordSince(waiter.enqueuedNanos());
+        return waiter;
+    }
+}
@@ -0,0 +1,358 @@
+import org.apache.logging.log4j.Logger;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * خواندن استریمی کاربران از فایل اکسل با API رویدادمحور (SAX) کتابخانه POI
+ * برخلاف XSSFWorkbook کل فایل در حافظه ساخته نمی‌شود: XML شیت روی یک virtual thread پردازش می‌شود
+ * و کاربران از طریق یک صف محدود تحویل داده می‌شوند، پس مصرف حافظه به تعداد سطرها بستگی ندارد
+ * و مصرف‌کننده می‌تواند از همان سطر اول کارش را شروع کند.
+ * این فقط وقتی برقرار است که مصرف‌کننده خودش هم محدود باشد: اگر هر کاربر را بدون صبر به جای دیگری بسپارد
+ * (مثلاً صف نامحدود)، کل فایل همان ابتدا خوانده و در آن‌جا جمع می‌شود. sendToExcelUsers با Broadcaster.submit
+ * مصرف می‌کند که وقتی تعداد مراحل در جریان به سقف برسد منتظر می‌ماند.
+ * ستون‌ها و قواعد تبدیل سلول‌ها همان قواعد ExcelReader.readUsersFromExcel است.
+ */
+public class StreamingUserReader implements Iterator<User>, AutoCloseable {
+
+    private static final Logger LOG = AsyncLogging.logger("users");
+
+    private static final int BUFFER_SIZE = 256;
+
+    // نشانگر پایان صف
+    private static final User END = new User();
+
+    private final BlockingQueue<User> queue = new ArrayBlockingQueue<>(BUFFER_SIZE);
+    private final Thread producer;
+    private volatile boolean cancelled;
+    private User next;
+
+    /**
+     * شروع خواندن فایل در پس‌زمینه
+     * @param filePath مسیر فایل اکسل
+     */
+    public StreamingUserReader(String filePath) {
+        this.producer = Thread.ofVirtual().name("excel-stream").start(() -> produce(new File(filePath)));
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            try {
+                next = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                next = END;
+            }
+        }
+        return next != END;
+    }
+
+    @Override
+    public User next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        User user = next;
+        next = null;
+        return user;
+    }
+
+    /**
+     * توقف خواندن (مثلاً اگر مصرف‌کننده قبل از پایان فایل کار را متوقف کند)
+     */
+    @Override
+    public void close() {
+        cancelled = true;
+        producer.interrupt();
+        queue.clear();
+        next = END;
+    }
+
+    private void produce(File file) {
+        long start = System.nanoTime();
+        RowHandler handler = null;
+        try (OPCPackage pkg = OPCPackage.open(file, PackageAccess.READ)) {
+            XSSFReader reader = new XSSFReader(pkg);
+            List<String> strings = readSharedStrings(reader);
+            Iterator<InputStream> sheets = reader.getSheetsData();
+            if (sheets.hasNext()) {
+                try (InputStream sheet = sheets.next()) {
+                    handler = new RowHandler(strings);
+                    XMLReader parser = XMLHelper.newXMLReader();
+                    parser.setContentHandler(handler);
+                    parser.parse(new InputSource(sheet));
+                }
+            }
+        } catch (StopParsing ignored) {
+            // پایان زودهنگام (لغو توسط مصرف‌کننده یا نبود ستون username)
+        } catch (Exception e) {
+            if (!cancelled) {
+                LOG.error("خطا در خواندن فایل اکسل: {}", e.getMessage(), e);
+            }
+        } finally {
+            if (!cancelled) {
+                Metrics.EXCEL_LOAD.recordSince(start);
+                if (handler != null && handler.indexes != null && handler.indexes.usernameCol != -1) {
+                    LOG.info("تعداد {} کاربر از فایل اکسل خوانده شد.", handler.count);
+                }
+                try {
+                    queue.put(END);
+                } catch (InterruptedException ignored) {}
+            }
+        }
+    }
+
+    /**
+     * خواندن جدول رشته‌های مشترک (sharedStrings.xml) به صورت رشته ساده
+     * متن همه run ها به هم چسبانده می‌شود و متن‌های آوایی (rPh) نادیده گرفته می‌شوند
+     */
+    private static List<String> readSharedStrings(XSSFReader reader) throws Exception {
+        List<String> strings = new ArrayList<>();
+        InputStream data;
+        try {
+            data = reader.getSharedStringsData();
+        } catch (Exception e) {
+            return strings; // فایل بدون رشته مشترک
+        }
+        if (data == null) return strings;
+
+        try (InputStream in = data) {
+            XMLReader parser = XMLHelper.newXMLReader();
+            parser.setContentHandler(new DefaultHandler() {
+                private final StringBuilder text = new StringBuilder();
+                private boolean collecting;
+                private boolean phonetic;
+
+                @Override
+                public void startElement(String uri, String localName, String qName, Attributes attributes) {
+                    switch (localName) {
+                        case "si" -> text.setLength(0);
+                        case "rPh" -> phonetic = true;
+                        case "t" -> collecting = !phonetic;
+                    }
+                }
+
+                @Override
+                public void characters(char[] ch, int start, int length) {
+                    if (collecting) {
+                        text.append(ch, start, length);
+                    }
+                }
+
+                @Override
+                public void endElement(String uri, String localName, String qName) {
+                    switch (localName) {
+                        case "si" -> strings.add(text.toString());
+                        case "rPh" -> phonetic = false;
+                        case "t" -> collecting = false;
+                    }
+                }
+            });
+            parser.parse(new InputSource(in));
+        }
+        return strings;
+    }
+
+    /**
+     * خطای داخلی برای متوقف کردن parser
+     */
+    private static class StopParsing extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        StopParsing() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * پردازش عناصر row و c در XML شیت
+     * سطر اول هدر است و سطرهای بعدی به User تبدیل می‌شوند
+     */
+    private class RowHandler extends DefaultHandler {
+        private final List<String> strings;
+        private final StringBuilder text = new StringBuilder();
+
+        ExcelReader.HeaderIndexes indexes;
+        int count;
+
+        private int rowNum;
+        private User user;
+
+        // وضعیت سلول جاری
+        private int column;
+        private String type;
+        private boolean formula;
+        private boolean hasValue;
+        private boolean collecting;
+
+        RowHandler(List<String> strings) {
+            this.strings = strings;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            switch (localName) {
+                case "row" -> {
+                    String r = attributes.getValue("r");
+                    rowNum = r != null ? Integer.parseInt(r) : rowNum + 1;
+                    if (indexes == null && rowNum != 1) {
+                        // سطر اول (هدر) وجود ندارد
+                        indexes = new ExcelReader.HeaderIndexes();
+                        checkHeader();
+                    }
+                    user = new User();
+                    column = -1;
+                }
+                case "c" -> {
+                    column = columnOf(attributes.getValue("r"), column + 1);
+                    type = attributes.getValue("t");
+                    formula = false;
+                    hasValue = false;
+                    text.setLength(0);
+                }
+                case "f" -> formula = true;
+                case "v", "t" -> {
+                    collecting = true;
+                    hasValue = true;
+                }
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (collecting) {
+                text.append(ch, start, length);
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            switch (localName) {
+                case "v", "t" -> collecting = false;
+                case "c" -> endCell();
+                case "row" -> endRow();
+            }
+        }
+
+        @Override
+        public void endDocument() {
+            if (indexes == null) {
+                indexes = new ExcelReader.HeaderIndexes();
+                checkHeader();
+            }
+        }
+
+        private void endCell() {
+            if (rowNum == 1) {
+                if (indexes == null) {
+                    indexes = new ExcelReader.HeaderIndexes();
+                }
+                indexes.assign(column, cellValue());
+                return;
+            }
+
+            if (column == indexes.usernameCol) {
+                user.setUsername(cellValue());
+            } else if (column == indexes.genderCol) {
+                user.setGender(cellValue());
+            } else if (column == indexes.lastnameCol) {
+                user.setLastname(cellValue());
+            } else if (column == indexes.chatIdCol) {
+                user.setChatId(chatIdValue());
+            }
+        }
+
+        private void endRow() {
+            if (rowNum == 1) {
+                if (indexes == null) {
+                    indexes = new ExcelReader.HeaderIndexes();
+                }
+                checkHeader();
+                return;
+            }
+
+            // فقط کاربرانی که username دارند اضافه شوند
+            if (user.getUsername() != null && !user.getUsername().isEmpty()) {
+                if (cancelled) throw new StopParsing();
+                try {
+                    queue.put(user);
+                    count++;
+                } catch (InterruptedException e) {
+                    throw new StopParsing();
+                }
+            }
+        }
+
+        private void checkHeader() {
+            if (indexes.usernameCol == -1) {
+                LOG.error("خطا: ستون username در فایل اکسل پیدا نشد!");
+                throw new StopParsing();
+            }
+        }
+
+        /**
+         * مقدار متنی سلول با همان قواعد ExcelReader.getCellValue:
+         * متن trim می‌شود، عدد به long تبدیل می‌شود، بولین true/false و بقیه (فرمول، خطا، خالی) رشته خالی
+         */
+        private String cellValue() {
+            if (formula || !hasValue) return "";
+            String raw = text.toString();
+            if (type == null || type.equals("n")) {
+                try {
+                    return String.valueOf((long) Double.parseDouble(raw));
+                } catch (NumberFormatException e) {
+                    return "";
+                }
+            }
+            return switch (type) {
+                case "s" -> strings.get(Integer.parseInt(raw.trim())).trim();
+                case "inlineStr" -> raw.trim();
+                case "b" -> String.valueOf(raw.equals("1"));
+                default -> "";
+            };
+        }
+
+        /**
+         * chat_id از سلول عددی یا متنی قابل تبدیل به عدد
+         */
+        private Long chatIdValue() {
+            if (formula || !hasValue) return null;
+            try {
+                if (type == null || type.equals("n")) {
+                    return (long) Double.parseDouble(text.toString());
+                }
+                if (type.equals("s") || type.equals("inlineStr")) {
+                    return Long.parseLong(cellValue());
+                }
+            } catch (NumberFormatException ignored) {}
+            return null;
+        }
+    }
+
+    /**
+     * تبدیل مرجع سلول (مثل AB12) به ایندکس ستون (از صفر)
+     */
+    private static int columnOf(String reference, int fallback) {
+        if (reference == null) return fallback;
+        int column = 0;
+        for (int i = 0; i < reference.length(); i++) {
+            char ch = reference.charAt(i);
+            if (ch < 'A' || ch > 'Z') break;
+            column = column * 26 + (ch - 'A' + 1);
+        }
+        return column - 1;
+    }
+}
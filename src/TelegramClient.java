@@ -0,0 +1,444 @@
+import org.apache.logging.log4j.Logger;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * کلاینت مشترک Bot API تلگرام
+ * همه درخواست‌ها از یک HttpClient مشترک (با HTTP/2 و استفاده مجدد از اتصال) عبور می‌کنند
+ * تا هزینه TLS handshake و ساخت socket برای هر پیام تکرار نشود.
+ * همه متدها CompletableFuture برمی‌گردانند؛ برای حالت همگام کافی است join() صدا زده شود.
+ *
+ * زمان‌های انتظار و آدرس سرور با System property ها قابل تنظیم هستند:
+ * telegram.connectTimeoutSeconds (پیش‌فرض 10)، telegram.readTimeoutSeconds (پیش‌فرض 30)
+ * و telegram.apiBaseUrl (پیش‌فرض https://api.telegram.org؛ مثلاً برای FakeTelegramServer یا یک Bot API server محلی)
+ */
+public class TelegramClient {
+
+    private static final Logger LOG = AsyncLogging.logger("telegram");
+
+    private static final String DEFAULT_API_BASE_URL = System.getProperty("telegram.apiBaseUrl", "https://api.telegram.org");
+
+    private static final Duration DEFAULT_CONNECT_TIMEOUT =
+            Duration.ofSeconds(Long.getLong("telegram.connectTimeoutSeconds", 10));
+    private static final Duration DEFAULT_READ_TIMEOUT =
+            Duration.ofSeconds(Long.getLong("telegram.readTimeoutSeconds", 30));
+
+    // یک کلاینت برای هر توکن؛ همه بخش‌های برنامه از همین نمونه‌ها استفاده می‌کنند
+    private static final Map<String, TelegramClient> CLIENTS = new ConcurrentHashMap<>();
+
+    // سیاست تلاش مجدد
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long BASE_BACKOFF_MILLIS = 500;
+    private static final long MAX_BACKOFF_MILLIS = 30_000;
+
+    private static final Executor DECODER_EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final HttpClient http;
+    private final CircuitBreaker breaker = new CircuitBreaker(5, 5_000, 120_000);
+    private final String baseUrl;
+    private final Duration readTimeout;
+
+    /**
+     * پاسخ یک فراخوانی Bot API
+     * @param statusCode کد HTTP
+     * @param body بدنه کامل پاسخ (JSON)
+     * @param attempts تعداد تلاش‌ها تا رسیدن این پاسخ (1 یعنی بدون تلاش مجدد)
+     */
+    public record Response(int statusCode, String body, int attempts) {
+        public Response(int statusCode, String body) {
+            this(statusCode, body, 1);
+        }
+
+        Response withAttempts(int attempts) {
+            return new Response(statusCode, body, attempts);
+        }
+
+        public boolean isOk() {
+            return statusCode == 200;
+        }
+
+        public JSONObject json() {
+            return new JSONObject(body);
+        }
+
+        /**
+         * مقدار parameters.retry_after در پاسخ خطای تلگرام (ثانیه)، یا -1 اگر وجود نداشته باشد
+         */
+        public int retryAfterSeconds() {
+            try {
+                JSONObject parameters = json().optJSONObject("parameters");
+                return parameters == null ? -1 : parameters.optInt("retry_after", -1);
+            } catch (Exception e) {
+                return -1;
+            }
+        }
+
+        /**
+         * توضیح خطای تلگرام (فیلد description)
+         */
+        public String description() {
+            try {
+                return json().optString("description", "");
+            } catch (Exception e) {
+                return "";
+            }
+        }
+    }
+
+    /**
+     * @param apiBaseUrl آدرس سرور Bot API بدون / انتهایی (مثلاً https://api.telegram.org)
+     */
+    public TelegramClient(String apiBaseUrl, String botToken, Duration connectTimeout, Duration readTimeout) {
+        this.baseUrl = apiBaseUrl + "/bot" + botToken + "/";
+        this.readTimeout = readTimeout;
+        this.http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(connectTimeout)
+                .build();
+    }
+
+    /**
+     * کلاینت مشترک برای یک توکن (با زمان‌های انتظار پیش‌فرض)
+     */
+    public static TelegramClient forToken(String botToken) {
+        return CLIENTS.computeIfAbsent(botToken, token -> new TelegramClient(DEFAULT_API_BASE_URL, token, DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT));
+    }
+
+    /**
+     * دریافت آپدیت‌ها
+     * پاسخ به صورت استریمی با UpdateDecoder خوانده می‌شود (بدون ساخت رشته کامل پاسخ و درخت JSON)
+     * @param offset اولین update_id مورد نیاز (0 یعنی از ابتدا)
+     * @param timeoutSeconds مدت Long Polling؛ 0 یعنی پاسخ فوری
+     * @return آپدیت‌ها به ترتیب update_id؛ در صورت پاسخ ناموفق، future با IOException کامل می‌شود
+     */
+    public CompletableFuture<List<Update>> getUpdates(long offset, int timeoutSeconds) {
+        String query = "getUpdates?timeout=" + timeoutSeconds + (offset > 0 ? "&offset=" + offset : "");
+        HttpRequest request = newRequest(query, readTimeout.plusSeconds(timeoutSeconds)).GET().build();
+        Metrics.Histogram latency = Metrics.apiLatency("getUpdates");
+        long start = System.nanoTime();
+        // خواندن InputStream پاسخ مسدودکننده است؛ پس روی یک virtual thread و نه روی thread های HttpClient انجام می‌شود
+        return http.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream())
+                .thenApplyAsync(response -> {
+                    try (InputStream body = response.body()) {
+                        if (response.statusCode() != 200) {
+                            Metrics.recordError(response.statusCode());
+                            Response error = new Response(response.statusCode(), new String(body.readAllBytes(), StandardCharsets.UTF_8));
+                            throw new IOException("getUpdates ناموفق (کد " + error.statusCode() + "): " + error.description());
+                        }
+                        return UpdateDecoder.decodeResponse(body);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    } finally {
+                        latency.recordSince(start);
+                    }
+                }, DECODER_EXECUTOR)
+                .whenComplete((updates, error) -> {
+                    if (error != null && !(error.getCause() instanceof UncheckedIOException)) {
+                        Metrics.recordError(0);
+                    }
+                });
+    }
+
+    /**
+     * ثبت آدرس webhook در تلگرام
+     * @param url آدرس عمومی HTTPS
+     * @param secretToken مقداری که تلگرام در هدر X-Telegram-Bot-Api-Secret-Token می‌فرستد
+     */
+    public CompletableFuture<Response> setWebhook(String url, String secretToken) {
+        String data = "url=" + URLEncoder.encode(url, StandardCharsets.UTF_8);
+        if (secretToken != null && !secretToken.isEmpty()) {
+            data += "&secret_token=" + URLEncoder.encode(secretToken, StandardCharsets.UTF_8);
+        }
+        return postForm("setWebhook", data);
+    }
+
+    /**
+     * حذف webhook (تا زمانی که webhook فعال است getUpdates کار نمی‌کند)
+     */
+    public CompletableFuture<Response> deleteWebhook() {
+        return postForm("deleteWebhook", "drop_pending_updates=false");
+    }
+
+    public CompletableFuture<Response> sendMessage(long chatId, String text) {
+        return postForm("sendMessage", "chat_id=" + chatId + "&text=" + URLEncoder.encode(text, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * ویرایش متن پیامی که ربات قبلاً ارسال کرده
+     * اگر متن تغییری نکرده باشد، تلگرام کد 400 با "message is not modified" برمی‌گرداند
+     */
+    public CompletableFuture<Response> editMessageText(long chatId, long messageId, String text) {
+        return postForm("editMessageText", "chat_id=" + chatId + "&message_id=" + messageId
+                + "&text=" + URLEncoder.encode(text, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * ارسال عکسی که قبلاً آپلود شده با file_id
+     */
+    public CompletableFuture<Response> sendPhoto(long chatId, String fileId) {
+        return postForm("sendPhoto", "chat_id=" + chatId + "&photo=" + URLEncoder.encode(fileId, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * آپلود و ارسال یک عکس با multipart/form-data
+     */
+    public CompletableFuture<Response> uploadPhoto(long chatId, File photo) {
+        Multipart multipart = new Multipart()
+                .field("chat_id", Long.toString(chatId))
+                .file("photo", photo);
+        return postMultipart("sendPhoto", multipart);
+    }
+
+    /**
+     * ارسال آلبوم
+     * @param media آرایه media تلگرام؛ عنصر i ام لیست uploads با attach://photo{i} ارجاع داده می‌شود
+     * @param uploads فایل‌هایی که باید آپلود شوند
+     */
+    public CompletableFuture<Response> sendMediaGroup(long chatId, JSONArray media, List<File> uploads) {
+        Multipart multipart = new Multipart()
+                .field("chat_id", Long.toString(chatId))
+                .field("media", media.toString());
+        for (int i = 0; i < uploads.size(); i++) {
+            multipart.file("photo" + i, uploads.get(i));
+        }
+        return postMultipart("sendMediaGroup", multipart);
+    }
+
+    private CompletableFuture<Response> postForm(String method, String data) {
+        HttpRequest request = newRequest(method, readTimeout)
+                .header("Content-Type", "application/x-www-form-urlencoded; charset=UTF-8")
+                .POST(HttpRequest.BodyPublishers.ofString(data, StandardCharsets.UTF_8))
+                .build();
+        return sendWithRetry(request, Metrics.apiLatency(method), 0, 1);
+    }
+
+    private CompletableFuture<Response> postMultipart(String method, Multipart multipart) {
+        HttpRequest.BodyPublisher body = multipart.publisher();
+        HttpRequest request = newRequest(method, readTimeout)
+                .header("Content-Type", "multipart/form-data; boundary=" + multipart.boundary)
+                .POST(body)
+                .build();
+        return sendWithRetry(request, Metrics.apiLatency(method), Math.max(0, body.contentLength()), 1);
+    }
+
+    private HttpRequest.Builder newRequest(String pathAndQuery, Duration timeout) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + pathAndQuery)).timeout(timeout);
+    }
+
+    /**
+     * ارسال یک درخواست و ثبت latency آن (بدون تلاش مجدد)
+     */
+    private CompletableFuture<Response> send(HttpRequest request, Metrics.Histogram latency) {
+        long start = System.nanoTime();
+        return http.sendAsync(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8))
+                .handle((response, error) -> {
+                    latency.recordSince(start);
+                    if (error != null) {
+                        Metrics.recordError(0);
+                        throw error instanceof CompletionException ce ? ce : new CompletionException(error);
+                    }
+                    if (response.statusCode() != 200) {
+                        Metrics.recordError(response.statusCode());
+                    }
+                    return new Response(response.statusCode(), response.body());
+                });
+    }
+
+    /**
+     * ارسال با تلاش مجدد:
+     * پاسخ 429 بعد از retry_after اعلام‌شده و خطاهای موقت (5xx، خطای شبکه یا timeout) با تأخیر نمایی تصادفی دوباره ارسال می‌شوند.
+     * پاسخ‌ها به کنترل‌کننده نرخ (AIMD) و قطع‌کننده مدار گزارش می‌شوند و وقتی مدار باز است، ارسال تا پایان استراحت صبر می‌کند.
+     * توجه: پس از timeout ممکن است پیام قبلاً به دست تلگرام رسیده باشد و تلاش مجدد آن را تکراری کند.
+     */
+    private CompletableFuture<Response> sendWithRetry(HttpRequest request, Metrics.Histogram latency, long uploadBytes, int attempt) {
+        // شیء request در همه تلاش‌های یک درخواست یکسان است و درخواست آزمایشی مدار را مشخص می‌کند
+        long gateDelay = breaker.delayMillis(request);
+        if (gateDelay > 0) {
+            return CompletableFuture.supplyAsync(() -> null, delayed(gateDelay))
+                    .thenCompose(v -> sendWithRetry(request, latency, uploadBytes, attempt));
+        }
+
+        Metrics.UPLOADED_BYTES.add(uploadBytes);
+        return send(request, latency).handle((response, error) -> {
+            long retryDelay;
+            if (error == null && response.statusCode() == 429) {
+                breaker.onThrottled();
+                int retryAfter = response.retryAfterSeconds();
+                SendRateController.global().onThrottled(retryAfter);
+                retryDelay = retryAfter >= 0 ? TimeUnit.SECONDS.toMillis(retryAfter) : backoffMillis(attempt);
+            } else if (error != null || response.statusCode() >= 500) {
+                breaker.onFailure();
+                retryDelay = backoffMillis(attempt);
+            } else {
+                // موفق یا خطای دائمی (4xx): تلاش مجدد فایده‌ای ندارد
+                breaker.onSuccess();
+                if (response.isOk()) {
+                    SendRateController.global().onSuccess();
+                }
+                return CompletableFuture.completedFuture(response.withAttempts(attempt));
+            }
+
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            String reason = cause != null ? cause.getClass().getSimpleName() : "کد " + response.statusCode();
+            if (attempt >= MAX_ATTEMPTS) {
+                LOG.warn("❌ {} پس از {} تلاش؛ درخواست {} رها شد.", reason, attempt, request.uri().getPath());
+                return cause != null ? CompletableFuture.<Response>failedFuture(new RequestFailedException(cause, attempt))
+                        : CompletableFuture.completedFuture(response.withAttempts(attempt));
+            }
+            LOG.info("🔁 {}؛ تلاش مجدد {} بعد از {} میلی‌ثانیه.", reason, attempt + 1, retryDelay);
+            Metrics.RETRIES.increment();
+            return CompletableFuture.supplyAsync(() -> null, delayed(retryDelay))
+                    .thenCompose(v -> sendWithRetry(request, latency, uploadBytes, attempt + 1));
+        }).thenCompose(future -> future);
+    }
+
+    /**
+     * درخواستی که همه تلاش‌هایش با خطای شبکه یا timeout تمام شد (علت: خطای آخرین تلاش)
+     */
+    public static class RequestFailedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private final int attempts;
+
+        RequestFailedException(Throwable cause, int attempts) {
+            super(cause.getClass().getSimpleName() + " پس از " + attempts + " تلاش", cause);
+            this.attempts = attempts;
+        }
+
+        public int attempts() {
+            return attempts;
+        }
+    }
+
+    /**
+     * تأخیر نمایی با jitter: عددی تصادفی بین نصف تأخیر پایه و min(سقف، پایه × 2^(تلاش-1))
+     */
+    private static long backoffMillis(int attempt) {
+        long ceiling = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << Math.min(attempt - 1, 20));
+        return ThreadLocalRandom.current().nextLong(BASE_BACKOFF_MILLIS / 2, ceiling + 1);
+    }
+
+    private static Executor delayed(long millis) {
+        return CompletableFuture.delayedExecutor(millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * ساخت بدنه multipart/form-data
+     * بخش‌های ثابت (boundary، سرآیند فیلدها و پایان بدنه) فقط یک بار به بایت تبدیل می‌شوند و
+     * فایل‌ها مستقیماً از دیسک (FileChannel) خوانده می‌شوند؛ چون طول همه بخش‌ها مشخص است،
+     * درخواست با Content-Length دقیق و بدون chunked encoding ارسال می‌شود.
+     */
+    static class Multipart {
+        // boundary ثابت؛ احتمال تکرار آن در محتوای عکس عملاً صفر است
+        static final String BOUNDARY = "----TelegramBoundary" + UUID.randomUUID().toString().replace("-", "");
+
+        private static final byte[] CRLF = bytes("\r\n");
+        private static final byte[] CLOSING = bytes("--" + BOUNDARY + "--\r\n");
+        private static final Map<String, byte[]> FIELD_PREFIXES = new ConcurrentHashMap<>();
+
+        final String boundary = BOUNDARY;
+        private final List<HttpRequest.BodyPublisher> parts = new ArrayList<>();
+
+        Multipart field(String name, String value) {
+            parts.add(HttpRequest.BodyPublishers.ofByteArray(FIELD_PREFIXES.computeIfAbsent(name, n -> bytes("--" + BOUNDARY + "\r\n"
+                    + "Content-Disposition: form-data; name=\"" + n + "\"\r\n\r\n"))));
+            parts.add(HttpRequest.BodyPublishers.ofByteArray(bytes(value + "\r\n")));
+            return this;
+        }
+
+        /**
+         * پیوست یک فایل
+         * نام واقعی فایل (که ممکن است " یا CR/LF یا حروف غیر ASCII داشته باشد و سرآیند را خراب کند) فرستاده نمی‌شود؛
+         * Bot API به آن نیازی ندارد و filename از نام part و پسوند نوع تشخیص‌داده‌شده ساخته می‌شود (مثلاً photo.jpg)
+         */
+        Multipart file(String name, File file) {
+            String type = contentType(file);
+            parts.add(HttpRequest.BodyPublishers.ofByteArray(bytes("--" + BOUNDARY + "\r\n"
+                    + "Content-Disposition: form-data; name=\"" + name + "\"; filename=\"" + name + extensionOf(type) + "\"\r\n"
+                    + "Content-Type: " + type + "\r\n\r\n")));
+            try {
+                parts.add(HttpRequest.BodyPublishers.ofFile(file.toPath()));
+            } catch (FileNotFoundException e) {
+                throw new UncheckedIOException(e);
+            }
+            parts.add(HttpRequest.BodyPublishers.ofByteArray(CRLF));
+            return this;
+        }
+
+        HttpRequest.BodyPublisher publisher() {
+            List<HttpRequest.BodyPublisher> all = new ArrayList<>(parts);
+            all.add(HttpRequest.BodyPublishers.ofByteArray(CLOSING));
+            return HttpRequest.BodyPublishers.concat(all.toArray(new HttpRequest.BodyPublisher[0]));
+        }
+
+        /**
+         * تشخیص نوع فایل از روی چند بایت اول (نه فقط پسوند)
+         */
+        static String contentType(File file) {
+            byte[] header = new byte[12];
+            int read;
+            try (InputStream in = new FileInputStream(file)) {
+                read = in.readNBytes(header, 0, header.length);
+            } catch (IOException e) {
+                read = 0;
+            }
+            if (read >= 3 && (header[0] & 0xFF) == 0xFF && (header[1] & 0xFF) == 0xD8 && (header[2] & 0xFF) == 0xFF) {
+                return "image/jpeg";
+            }
+            if (read >= 8 && (header[0] & 0xFF) == 0x89 && header[1] == 'P' && header[2] == 'N' && header[3] == 'G') {
+                return "image/png";
+            }
+            if (read >= 6 && header[0] == 'G' && header[1] == 'I' && header[2] == 'F') {
+                return "image/gif";
+            }
+            // RIFF ظرف عمومی است (WAV، AVI و ...)؛ WebP بودن با "WEBP" در بایت‌های 8 تا 11 مشخص می‌شود
+            if (read >= 12 && header[0] == 'R' && header[1] == 'I' && header[2] == 'F' && header[3] == 'F'
+                    && header[8] == 'W' && header[9] == 'E' && header[10] == 'B' && header[11] == 'P') {
+                return "image/webp";
+            }
+            String name = file.getName().toLowerCase();
+            if (name.endsWith(".png")) return "image/png";
+            if (name.endsWith(".jpg") || name.endsWith(".jpeg")) return "image/jpeg";
+            return "application/octet-stream";
+        }
+
+        private static String extensionOf(String contentType) {
+            return switch (contentType) {
+                case "image/jpeg" -> ".jpg";
+                case "image/png" -> ".png";
+                case "image/gif" -> ".gif";
+                case "image/webp" -> ".webp";
+                default -> "";
+            };
+        }
+
+        private static byte[] bytes(String value) {
+            return value.getBytes(StandardCharsets.UTF_8);
+        }
+    }
+}
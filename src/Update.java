@@ -0,0 +1,15 @@
+/**
+ * یک آپدیت تلگرام، فقط با فیلدهایی که ربات استفاده می‌کند
+ * (به جای نگه داشتن کل درخت JSON آپدیت)
+ * @param updateId شناسه آپدیت (برای offset)
+ * @param hasMessage آیا آپدیت یک پیام (message) است؛ اگر نه، بقیه فیلدها خالی هستند
+ * @param chatId شناسه چت
+ * @param username نام کاربری چت یا null
+ * @param firstName نام یا null
+ * @param lastName نام خانوادگی یا null
+ * @param text متن پیام یا null
+ * @param date زمان ارسال پیام (ثانیه از epoch)
+ */
+public record Update(long updateId, boolean hasMessage, long chatId, String username, String firstName,
+                     String lastName, String text, long date) {
+}
@@ -0,0 +1,453 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * دیکودر استریمی پاسخ getUpdates (و بدنه webhook)
+ * بایت‌های پاسخ مستقیماً از InputStream خوانده می‌شوند و فقط فیلدهای مورد نیاز
+ * (update_id، و در message: chat.id، chat.username، chat.first_name، chat.last_name، text و date)
+ * به Update تبدیل می‌شوند؛ بقیه مقادیر بدون ساخت هیچ شیئی رد می‌شوند و درخت JSON ساخته نمی‌شود.
+ * نام فیلدها به صورت بایت مقایسه می‌شوند و برای هر آپدیت فقط رشته‌های لازم ساخته می‌شوند.
+ */
+public final class UpdateDecoder {
+
+    private static final byte[] OK = ascii("ok");
+    private static final byte[] RESULT = ascii("result");
+    private static final byte[] DESCRIPTION = ascii("description");
+    private static final byte[] UPDATE_ID = ascii("update_id");
+    private static final byte[] MESSAGE = ascii("message");
+    private static final byte[] CHAT = ascii("chat");
+    private static final byte[] ID = ascii("id");
+    private static final byte[] USERNAME = ascii("username");
+    private static final byte[] FIRST_NAME = ascii("first_name");
+    private static final byte[] LAST_NAME = ascii("last_name");
+    private static final byte[] TEXT = ascii("text");
+    private static final byte[] DATE = ascii("date");
+
+    // منبع بایت‌ها؛ null یعنی کل JSON از قبل در buffer است
+    private final InputStream in;
+    private final byte[] buffer;
+    private int position;
+    private int limit;
+
+    // بایت‌های UTF-8 آخرین رشته خوانده‌شده (نام فیلد یا مقدار)
+    private byte[] scratch = new byte[128];
+    private int scratchLength;
+
+    // فیلدهای آپدیت در حال خواندن
+    private long updateId;
+    private boolean hasMessage;
+    private long chatId;
+    private String username;
+    private String firstName;
+    private String lastName;
+    private String text;
+    private long date;
+
+    private UpdateDecoder(InputStream in) {
+        this.in = in;
+        this.buffer = new byte[8192];
+    }
+
+    private UpdateDecoder(byte[] json) {
+        this.in = null;
+        this.buffer = json;
+        this.limit = json.length;
+    }
+
+    /**
+     * خواندن پاسخ کامل getUpdates ({"ok":true,"result":[...]})
+     * @throws IOException اگر JSON نامعتبر باشد یا ok برابر false باشد
+     */
+    public static List<Update> decodeResponse(InputStream in) throws IOException {
+        return new UpdateDecoder(in).readResponse();
+    }
+
+    /**
+     * خواندن پاسخ getUpdates از آرایه بایت (بدون کپی در بافر)
+     */
+    public static List<Update> decodeResponse(byte[] json) throws IOException {
+        return new UpdateDecoder(json).readResponse();
+    }
+
+    /**
+     * خواندن یک آپدیت تنها (بدنه درخواست webhook)
+     */
+    public static Update decodeUpdate(InputStream in) throws IOException {
+        return new UpdateDecoder(in).readUpdate();
+    }
+
+    private List<Update> readResponse() throws IOException {
+        List<Update> updates = new ArrayList<>();
+        boolean ok = false;
+        String description = null;
+
+        expect('{');
+        if (!consumeIf('}')) {
+            do {
+                readKey();
+                if (keyIs(OK)) {
+                    ok = readBoolean();
+                } else if (keyIs(RESULT) && peek() == '[') {
+                    expect('[');
+                    if (!consumeIf(']')) {
+                        do {
+                            updates.add(readUpdate());
+                        } while (consumeIf(','));
+                        expect(']');
+                    }
+                } else if (keyIs(DESCRIPTION)) {
+                    description = readStringOrNull();
+                } else {
+                    skipValue();
+                }
+            } while (consumeIf(','));
+            expect('}');
+        }
+
+        if (!ok) {
+            throw new IOException("پاسخ ناموفق getUpdates: " + description);
+        }
+        return updates;
+    }
+
+    private Update readUpdate() throws IOException {
+        updateId = 0;
+        hasMessage = false;
+        chatId = 0;
+        username = firstName = lastName = text = null;
+        date = 0;
+
+        expect('{');
+        if (!consumeIf('}')) {
+            do {
+                readKey();
+                if (keyIs(UPDATE_ID)) {
+                    updateId = readLong();
+                } else if (keyIs(MESSAGE) && peek() == '{') {
+                    hasMessage = true;
+                    readMessage();
+                } else {
+                    skipValue();
+                }
+            } while (consumeIf(','));
+            expect('}');
+        }
+        return new Update(updateId, hasMessage, chatId, username, firstName, lastName, text, date);
+    }
+
+    private void readMessage() throws IOException {
+        expect('{');
+        if (consumeIf('}')) return;
+        do {
+            readKey();
+            if (keyIs(CHAT) && peek() == '{') {
+                readChat();
+            } else if (keyIs(TEXT)) {
+                text = readStringOrNull();
+            } else if (keyIs(DATE)) {
+                date = readLong();
+            } else {
+                // از جمله reply_to_message که chat جداگانه خودش را دارد
+                skipValue();
+            }
+        } while (consumeIf(','));
+        expect('}');
+    }
+
+    private void readChat() throws IOException {
+        expect('{');
+        if (consumeIf('}')) return;
+        do {
+            readKey();
+            if (keyIs(ID)) {
+                chatId = readLong();
+            } else if (keyIs(USERNAME)) {
+                username = readStringOrNull();
+            } else if (keyIs(FIRST_NAME)) {
+                firstName = readStringOrNull();
+            } else if (keyIs(LAST_NAME)) {
+                lastName = readStringOrNull();
+            } else {
+                skipValue();
+            }
+        } while (consumeIf(','));
+        expect('}');
+    }
+
+    // ---------- خواندن مقادیر ----------
+
+    private void readKey() throws IOException {
+        readStringToScratch();
+        expect(':');
+    }
+
+    private boolean keyIs(byte[] name) {
+        return Arrays.equals(scratch, 0, scratchLength, name, 0, name.length);
+    }
+
+    private long readLong() throws IOException {
+        int b = peek();
+        boolean negative = b == '-';
+        if (negative) position++;
+
+        long value = 0;
+        int digits = 0;
+        while ((b = peekRaw()) >= '0' && b <= '9') {
+            value = value * 10 + (b - '0');
+            position++;
+            digits++;
+        }
+        if (digits == 0) throw error("عدد");
+        // بخش اعشاری یا توان (در فیلدهای مورد استفاده وجود ندارد) نادیده گرفته می‌شود
+        while ((b = peekRaw()) == '.' || b == 'e' || b == 'E' || b == '+' || b == '-' || (b >= '0' && b <= '9')) {
+            position++;
+        }
+        return negative ? -value : value;
+    }
+
+    private boolean readBoolean() throws IOException {
+        int b = peek();
+        if (b == 't') {
+            consumeLiteral("true");
+            return true;
+        }
+        if (b == 'f') {
+            consumeLiteral("false");
+            return false;
+        }
+        throw error("true/false");
+    }
+
+    private String readStringOrNull() throws IOException {
+        if (peek() == 'n') {
+            consumeLiteral("null");
+            return null;
+        }
+        readStringToScratch();
+        return new String(scratch, 0, scratchLength, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * خواندن یک رشته JSON و نوشتن بایت‌های UTF-8 آن در scratch (escape ها باز می‌شوند)
+     */
+    private void readStringToScratch() throws IOException {
+        expect('"');
+        scratchLength = 0;
+        while (true) {
+            // مسیر سریع: کپی بایت‌های معمولی بافر تا رسیدن به " یا \
+            int start = position;
+            while (position < limit && buffer[position] != '"' && buffer[position] != '\\') {
+                position++;
+            }
+            appendScratch(buffer, start, position - start);
+            if (position == limit) {
+                fill();
+                continue;
+            }
+
+            byte b = buffer[position++];
+            if (b == '"') return;
+
+            appendEscape(read());
+        }
+    }
+
+    /**
+     * باز کردن escape بعد از \ ؛ جفت surrogate (\uD83D\uDE00) به یک کاراکتر UTF-8 تبدیل می‌شود
+     */
+    private void appendEscape(int escaped) throws IOException {
+        switch (escaped) {
+            case '"', '\\', '/' -> appendScratch((byte) escaped);
+            case 'b' -> appendScratch((byte) '\b');
+            case 'f' -> appendScratch((byte) '\f');
+            case 'n' -> appendScratch((byte) '\n');
+            case 'r' -> appendScratch((byte) '\r');
+            case 't' -> appendScratch((byte) '\t');
+            case 'u' -> {
+                int codePoint = readHex4();
+                if (!Character.isHighSurrogate((char) codePoint) || peekRaw() != '\\') {
+                    appendCodePoint(codePoint);
+                    return;
+                }
+                position++;
+                int next = read();
+                if (next != 'u') {
+                    // نیمه surrogate تنها و بعد از آن یک escape دیگر
+                    appendCodePoint(codePoint);
+                    appendEscape(next);
+                    return;
+                }
+                int low = readHex4();
+                if (Character.isLowSurrogate((char) low)) {
+                    appendCodePoint(Character.toCodePoint((char) codePoint, (char) low));
+                } else {
+                    appendCodePoint(codePoint);
+                    appendCodePoint(low);
+                }
+            }
+            default -> throw error("escape");
+        }
+    }
+
+    private int readHex4() throws IOException {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            int digit = Character.digit(read(), 16);
+            if (digit < 0) throw error("رقم hex");
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+
+    private void appendCodePoint(int codePoint) {
+        if (codePoint <= 0xFFFF && Character.isSurrogate((char) codePoint)) {
+            codePoint = '?'; // نیمه surrogate تنها
+        }
+        if (codePoint < 0x80) {
+            appendScratch((byte) codePoint);
+        } else if (codePoint < 0x800) {
+            appendScratch((byte) (0xC0 | (codePoint >> 6)));
+            appendScratch((byte) (0x80 | (codePoint & 0x3F)));
+        } else if (codePoint < 0x10000) {
+            appendScratch((byte) (0xE0 | (codePoint >> 12)));
+            appendScratch((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+            appendScratch((byte) (0x80 | (codePoint & 0x3F)));
+        } else {
+            appendScratch((byte) (0xF0 | (codePoint >> 18)));
+            appendScratch((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+            appendScratch((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+            appendScratch((byte) (0x80 | (codePoint & 0x3F)));
+        }
+    }
+
+    private void appendScratch(byte b) {
+        if (scratchLength == scratch.length) {
+            scratch = Arrays.copyOf(scratch, scratch.length * 2);
+        }
+        scratch[scratchLength++] = b;
+    }
+
+    private void appendScratch(byte[] source, int offset, int length) {
+        if (scratchLength + length > scratch.length) {
+            scratch = Arrays.copyOf(scratch, Math.max(scratch.length * 2, scratchLength + length));
+        }
+        System.arraycopy(source, offset, scratch, scratchLength, length);
+        scratchLength += length;
+    }
+
+    // ---------- رد کردن مقادیر بدون ساخت شیء ----------
+
+    private void skipValue() throws IOException {
+        switch (peek()) {
+            case '{' -> {
+                expect('{');
+                if (consumeIf('}')) return;
+                do {
+                    skipString();
+                    expect(':');
+                    skipValue();
+                } while (consumeIf(','));
+                expect('}');
+            }
+            case '[' -> {
+                expect('[');
+                if (consumeIf(']')) return;
+                do {
+                    skipValue();
+                } while (consumeIf(','));
+                expect(']');
+            }
+            case '"' -> skipString();
+            case 't' -> consumeLiteral("true");
+            case 'f' -> consumeLiteral("false");
+            case 'n' -> consumeLiteral("null");
+            default -> readLong();
+        }
+    }
+
+    private void skipString() throws IOException {
+        expect('"');
+        while (true) {
+            while (position < limit && buffer[position] != '"' && buffer[position] != '\\') {
+                position++;
+            }
+            if (position == limit) {
+                fill();
+                continue;
+            }
+            if (buffer[position++] == '"') return;
+            read(); // کاراکتر بعد از \ (برای \\u فقط u؛ چهار رقم hex در دور بعد رد می‌شوند)
+        }
+    }
+
+    // ---------- بافر ----------
+
+    private void consumeLiteral(String literal) throws IOException {
+        peek();
+        for (int i = 0; i < literal.length(); i++) {
+            if (read() != literal.charAt(i)) throw error(literal);
+        }
+    }
+
+    private void expect(char expected) throws IOException {
+        if (peek() != expected) throw error("'" + expected + "'");
+        position++;
+    }
+
+    private boolean consumeIf(char expected) throws IOException {
+        if (peek() != expected) return false;
+        position++;
+        return true;
+    }
+
+    /**
+     * بایت بعدی بعد از فاصله‌های خالی (بدون مصرف آن)؛ -1 در پایان استریم
+     */
+    private int peek() throws IOException {
+        while (true) {
+            if (position == limit && !tryFill()) return -1;
+            byte b = buffer[position];
+            if (b != ' ' && b != '\n' && b != '\r' && b != '\t') return b;
+            position++;
+        }
+    }
+
+    /**
+     * بایت بعدی بدون رد کردن فاصله‌ها (بدون مصرف آن)؛ -1 در پایان استریم
+     */
+    private int peekRaw() throws IOException {
+        if (position == limit && !tryFill()) return -1;
+        return buffer[position];
+    }
+
+    private int read() throws IOException {
+        if (position == limit) fill();
+        return buffer[position++];
+    }
+
+    private void fill() throws IOException {
+        if (!tryFill()) throw new EOFException("پایان ناگهانی JSON");
+    }
+
+    private boolean tryFill() throws IOException {
+        if (in == null) return false;
+        int n = in.read(buffer, 0, buffer.length);
+        if (n <= 0) return false;
+        position = 0;
+        limit = n;
+        return true;
+    }
+
+    private IOException error(String expected) {
+        return new IOException("JSON نامعتبر: انتظار " + expected + " (بایت " + position + " از بافر)");
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
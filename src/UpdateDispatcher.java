@@ -0,0 +1,105 @@
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * صف پردازش آپدیت‌ها
+ * حلقه polling فقط آپدیت‌ها را دریافت و در این صف قرار می‌دهد و پردازش دستورات روی thread های کارگر انجام می‌شود؛
+ * بنابراین یک /send طولانی دریافت پیام‌های بقیه کاربران را متوقف نمی‌کند.
+ * کارهای هر چت به ترتیب و یکی‌یکی اجرا می‌شوند و کارهای چت‌های مختلف موازی.
+ * ظرفیت صف محدود است: اگر پر باشد، dispatch تا خالی شدن جا صبر می‌کند (backpressure روی polling).
+ * هر چت هم سقف جداگانه دارد تا یک چت پرحرف همه ظرفیت را نگیرد؛ دستورات اضافه آن چت اجرا نمی‌شوند
+ * و dispatch با false به فراخواننده خبر می‌دهد تا به کاربر اطلاع دهد.
+ */
+public class UpdateDispatcher {
+
+    private static final Logger LOG = AsyncLogging.logger("dispatch");
+
+    private final ExecutorService workers = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("update-worker-", 0).factory());
+    private final Semaphore capacity;
+    private final int maxPending;
+    private final int maxPerChat;
+
+    // صف کارهای هر چتی که در حال پردازش است
+    private final Map<Long, ArrayDeque<Runnable>> chatQueues = new HashMap<>();
+
+    /**
+     * @param maxPending حداکثر تعداد کار در انتظار (در همه چت‌ها)
+     * @param maxPerChat حداکثر تعداد کار در انتظار یا در حال اجرای یک چت
+     */
+    public UpdateDispatcher(int maxPending, int maxPerChat) {
+        this.maxPending = maxPending;
+        this.maxPerChat = maxPerChat;
+        this.capacity = new Semaphore(maxPending);
+    }
+
+    /**
+     * قرار دادن یک کار در صف چت
+     * اگر صف پر باشد تا آزاد شدن جا صبر می‌کند
+     * @return false اگر صف این چت به سقف خود رسیده باشد (کار اجرا نمی‌شود)
+     */
+    public boolean dispatch(Long chatId, Runnable task) throws InterruptedException {
+        capacity.acquire();
+
+        boolean startWorker;
+        synchronized (chatQueues) {
+            ArrayDeque<Runnable> queue = chatQueues.get(chatId);
+            // کار در حال اجرا از صف برداشته شده ولی جزو سهم چت است
+            if (queue != null && queue.size() + 1 >= maxPerChat) {
+                capacity.release();
+                LOG.warn("⚠️ صف دستورات {} پر است ({} دستور)؛ دستور جدید نادیده گرفته شد.", chatId, maxPerChat);
+                return false;
+            }
+            startWorker = queue == null;
+            if (startWorker) {
+                queue = new ArrayDeque<>();
+                chatQueues.put(chatId, queue);
+            }
+            queue.add(task);
+        }
+
+        if (startWorker) {
+            workers.execute(() -> drain(chatId));
+        }
+        return true;
+    }
+
+    /**
+     * تعداد کارهای در انتظار یا در حال اجرا
+     */
+    public int pending() {
+        return maxPending - capacity.availablePermits();
+    }
+
+    /**
+     * اجرای کارهای یک چت به ترتیب تا خالی شدن صف آن
+     * هر Throwable کار (حتی Error) گرفته می‌شود تا صف چت بدون worker نماند و کارهای بعدی آن چت گیر نکنند
+     */
+    private void drain(Long chatId) {
+        while (true) {
+            Runnable task;
+            synchronized (chatQueues) {
+                ArrayDeque<Runnable> queue = chatQueues.get(chatId);
+                task = queue.poll();
+                if (task == null) {
+                    chatQueues.remove(chatId);
+                    return;
+                }
+            }
+
+            try {
+                task.run();
+            } catch (Throwable e) {
+                LOG.error("⚠️ خطا در پردازش پیام {}: {}", chatId, e.getMessage(), e);
+            } finally {
+                capacity.release();
+            }
+        }
+    }
+}
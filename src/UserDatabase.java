@@ -0,0 +1,512 @@
+import org.apache.logging.log4j.Logger;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * پایگاه داده محلی کاربران
+ * کاربران در حافظه با دو ایندکس نگهداری می‌شوند: کلید اصلی chat_id و ایندکس ثانویه username (بدون حساسیت به حروف و بدون @).
+ * روی دیسک دو فایل وجود دارد: snapshot (وضعیت فشرده همه کاربران) و log (هر تغییر به انتهای آن اضافه می‌شود).
+ * هنگام راه‌اندازی هر دو فایل به صورت memory-mapped خوانده می‌شوند و وقتی log بزرگ شد، snapshot جدید ساخته می‌شود.
+ * فایل اکسل فقط برای import و export استفاده می‌شود.
+ *
+ * ساختار هر رکورد: طول (int)، CRC32 (int)، پرچم‌ها (byte)، chat_id (long)، و سه رشته username/gender/lastname
+ * (هر کدام با طول int؛ -1 یعنی null)
+ */
+public class UserDatabase {
+
+    private static final Logger LOG = AsyncLogging.logger("users");
+
+    private static final int MAGIC = 0x55444231; // "UDB1"
+    private static final int MIN_COMPACT_LOG_RECORDS = 10_000;
+    private static final String DEFAULT_DIRECTORY = "users.db";
+
+    private static volatile UserDatabase shared;
+
+    private final Path snapshotPath;
+    private final Path logPath;
+    private final Path importStampPath;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // کاربران به ترتیب ثبت + ایندکس‌ها
+    // LinkedHashSet تا حذف رکورد ادغام‌شده O(1) باشد نه پیمایش کل لیست (User equals ندارد؛ مقایسه با هویت شیء)
+    private final Set<User> records = new LinkedHashSet<>();
+    private final Map<Long, User> byChatId = new HashMap<>();
+    private final Map<String, User> byUsername = new HashMap<>();
+
+    private FileChannel log;
+    private int logRecords;
+
+    private UserDatabase(String directory) throws IOException {
+        Path dir = Path.of(directory);
+        Files.createDirectories(dir);
+        this.snapshotPath = dir.resolve("snapshot.bin");
+        this.logPath = dir.resolve("log.bin");
+        this.importStampPath = dir.resolve("excel-import.stamp");
+
+        long start = System.nanoTime();
+        load(snapshotPath);
+        long validLogBytes = load(logPath);
+        openLog(validLogBytes);
+        LOG.info("🗄️ {} کاربر از پایگاه داده بارگذاری شد ({} میلی‌ثانیه).", records.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * باز کردن پایگاه داده و ساخت snapshot جدید اگر log بزرگ شده باشد
+     * (فشرده‌سازی بعد از کامل شدن سازنده انجام می‌شود تا شیء نیمه‌ساخته به compact نرسد)
+     * @param directory پوشه فایل‌های پایگاه داده
+     */
+    public static UserDatabase open(String directory) throws IOException {
+        UserDatabase database = new UserDatabase(directory);
+        if (database.needsCompaction()) {
+            database.compact();
+        }
+        return database;
+    }
+
+    /**
+     * پایگاه داده مشترک برنامه (پوشه users.db، قابل تغییر با -Dbot.users.dir)
+     */
+    public static UserDatabase shared() {
+        if (shared == null) {
+            synchronized (UserDatabase.class) {
+                if (shared == null) {
+                    try {
+                        shared = open(System.getProperty("bot.users.dir", DEFAULT_DIRECTORY));
+                    } catch (IOException e) {
+                        throw new IllegalStateException("خطا در باز کردن پایگاه داده کاربران", e);
+                    }
+                }
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * ثبت یا به‌روزرسانی کاربر
+     * اگر کاربر با chat_id یا username موجود باشد فقط مقادیر خالی آن تکمیل می‌شوند (مثل upsertUserRow)،
+     * به جز username کاربری که با chat_id پیدا شده و username تازه‌ای دارد؛
+     * فقط در صورت تغییر، رکورد جدید در log نوشته می‌شود
+     * @return true اگر اطلاعات تغییر کرد
+     */
+    public boolean upsert(User user) {
+        if (normalize(user.getUsername()) == null && user.getChatId() == null) {
+            return false;
+        }
+
+        lock.writeLock().lock();
+        try {
+            User merged = apply(user);
+            if (merged == null) return false;
+
+            appendToLog(merged);
+            if (needsCompaction()) {
+                compact();
+            }
+            return true;
+        } catch (IOException e) {
+            LOG.warn("⚠️ خطا در ذخیره کاربر در پایگاه داده: {}", e.getMessage());
+            return false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return کپی اطلاعات کاربر یا null
+     */
+    public User findByChatId(Long chatId) {
+        lock.readLock().lock();
+        try {
+            return copyOf(byChatId.get(chatId));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param username نام کاربری (با یا بدون @، بدون حساسیت به حروف)
+     * @return کپی اطلاعات کاربر یا null
+     */
+    public User findByUsername(String username) {
+        String key = normalize(username);
+        if (key == null) return null;
+        lock.readLock().lock();
+        try {
+            return copyOf(byUsername.get(key));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return records.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * پیمایش همه کاربران به ترتیب ثبت (روی کپی‌ها)
+     */
+    public void forEach(Consumer<User> action) {
+        List<User> copies;
+        lock.readLock().lock();
+        try {
+            copies = new ArrayList<>(records.size());
+            for (User user : records) {
+                copies.add(copyOf(user));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        copies.forEach(action);
+    }
+
+    /**
+     * وارد کردن کاربران از فایل اکسل (به صورت استریمی)
+     * @return تعداد کاربرانی که اطلاعاتشان تغییر کرد
+     */
+    public int importExcel(String filePath) {
+        int changed = 0;
+        try (Stream<User> users = ExcelReader.streamUsersFromExcel(filePath)) {
+            for (User user : (Iterable<User>) users::iterator) {
+                if (upsert(user)) changed++;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * وارد کردن فایل اکسل فقط اگر از آخرین import تغییر کرده باشد
+     * زمان تغییر و اندازه فایل بعد از هر import در پوشه پایگاه داده ثبت می‌شود؛ کاربران قبلاً وارد شده‌اند و خواندن دوباره لازم نیست
+     * @return تعداد کاربرانی که اطلاعاتشان تغییر کرد، یا -1 اگر فایل تغییری نکرده بود
+     */
+    public int importExcelIfChanged(String filePath) throws IOException {
+        Path file = Path.of(filePath);
+        String stamp = Files.getLastModifiedTime(file).toMillis() + " " + Files.size(file);
+        if (Files.exists(importStampPath) && Files.readString(importStampPath).equals(stamp)) {
+            return -1;
+        }
+        int changed = importExcel(filePath);
+        Files.writeString(importStampPath, stamp);
+        return changed;
+    }
+
+    /**
+     * خروجی گرفتن از همه کاربران در فایل اکسل (با SXSSF تا حافظه ثابت بماند)
+     */
+    public void exportExcel(String filePath) throws IOException {
+        Path target = Path.of(filePath).toAbsolutePath();
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        long start = System.nanoTime();
+
+        SXSSFWorkbook workbook = new SXSSFWorkbook(100);
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            Sheet sheet = workbook.createSheet("Users");
+            Row header = sheet.createRow(0);
+            String[] headers = {"username", "gender", "lastname", "chat_id"};
+            for (int i = 0; i < headers.length; i++) {
+                header.createCell(i).setCellValue(headers[i]);
+            }
+
+            int[] rowNum = {1};
+            forEach(user -> {
+                Row row = sheet.createRow(rowNum[0]++);
+                if (user.getUsername() != null) row.createCell(0).setCellValue(user.getUsername());
+                if (user.getGender() != null) row.createCell(1).setCellValue(user.getGender());
+                if (user.getLastname() != null) row.createCell(2).setCellValue(user.getLastname());
+                if (user.getChatId() != null) row.createCell(3).setCellValue(user.getChatId());
+            });
+            workbook.write(out);
+        } finally {
+            workbook.close();
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Metrics.EXCEL_FLUSH.recordSince(start);
+    }
+
+    /**
+     * ساخت snapshot جدید از وضعیت فعلی و خالی کردن log
+     */
+    public void compact() throws IOException {
+        lock.writeLock().lock();
+        try {
+            Path tmp = snapshotPath.resolveSibling("snapshot.bin.tmp");
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer header = ByteBuffer.allocate(4).putInt(MAGIC).flip();
+                out.write(header);
+                for (User user : records) {
+                    out.write(encode(user));
+                }
+                out.force(true);
+            }
+            Files.move(tmp, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            log.truncate(0);
+            log.write(ByteBuffer.allocate(4).putInt(MAGIC).flip());
+            log.force(true);
+            logRecords = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * بستن فایل log (داده‌ها قبلاً نوشته شده‌اند)
+     */
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            log.force(true);
+            log.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    static String normalize(String username) {
+        if (username == null) return null;
+        String key = username.trim();
+        if (key.startsWith("@")) {
+            key = key.substring(1);
+        }
+        return key.isEmpty() ? null : key.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * اعمال upsert روی حافظه
+     * جستجو اول با chat_id انجام می‌شود؛ username فقط رکوردی را پیدا می‌کند که هنوز chat_id ندارد
+     * (یا ورودی خودش chat_id ندارد)، تا دو حساب مختلف با یک username قدیمی در هم ادغام نشوند.
+     * وقتی کاربر با chat_id پیدا شود و username جدیدی داشته باشد، username عوض و ایندکس آن به‌روز می‌شود.
+     * @return رکورد نهایی در صورت تغییر، وگرنه null
+     */
+    private User apply(User user) {
+        String key = normalize(user.getUsername());
+        User existing = user.getChatId() != null ? byChatId.get(user.getChatId()) : null;
+        boolean matchedByChatId = existing != null;
+        if (existing == null && key != null) {
+            User candidate = byUsername.get(key);
+            if (candidate != null && (candidate.getChatId() == null || user.getChatId() == null)) {
+                existing = candidate;
+            }
+        }
+
+        String oldKey = null;
+        if (existing == null) {
+            existing = new User(user.getUsername(), user.getGender(), user.getLastname());
+            existing.setChatId(user.getChatId());
+            records.add(existing);
+        } else {
+            oldKey = normalize(existing.getUsername());
+            boolean changed = false;
+            if (key != null && (oldKey == null || (matchedByChatId && !key.equals(oldKey)))) {
+                existing.setUsername(user.getUsername());
+                changed = true;
+            }
+            if (isEmpty(existing.getGender()) && !isEmpty(user.getGender())) {
+                existing.setGender(user.getGender());
+                changed = true;
+            }
+            if (isEmpty(existing.getLastname()) && !isEmpty(user.getLastname())) {
+                existing.setLastname(user.getLastname());
+                changed = true;
+            }
+            if (existing.getChatId() == null && user.getChatId() != null) {
+                existing.setChatId(user.getChatId());
+                changed = true;
+            }
+            if (!changed) return null;
+        }
+
+        if (existing.getChatId() != null) {
+            byChatId.putIfAbsent(existing.getChatId(), existing);
+        }
+        String existingKey = normalize(existing.getUsername());
+        if (oldKey != null && !oldKey.equals(existingKey)) {
+            byUsername.remove(oldKey, existing);
+        }
+        if (existingKey != null) {
+            indexUsername(existingKey, existing);
+        }
+        return existing;
+    }
+
+    /**
+     * ثبت username در ایندکس
+     * رکورد دارای chat_id مالک username است (username در تلگرام یکتاست)؛ رکورد بدون chat_id قبلی با همان username
+     * در آن ادغام و حذف می‌شود، ولی رکورد بدون chat_id جای رکورد موجود را نمی‌گیرد
+     */
+    private void indexUsername(String key, User user) {
+        if (user.getChatId() == null) {
+            byUsername.putIfAbsent(key, user);
+            return;
+        }
+        User previous = byUsername.put(key, user);
+        if (previous != null && previous != user && previous.getChatId() == null) {
+            if (isEmpty(user.getGender())) user.setGender(previous.getGender());
+            if (isEmpty(user.getLastname())) user.setLastname(previous.getLastname());
+            records.remove(previous);
+        }
+    }
+
+    private boolean needsCompaction() {
+        return logRecords >= Math.max(MIN_COMPACT_LOG_RECORDS, records.size());
+    }
+
+    private static boolean isEmpty(String value) {
+        return value == null || value.isBlank();
+    }
+
+    private void appendToLog(User user) throws IOException {
+        log.write(encode(user));
+        logRecords++;
+    }
+
+    private void openLog(long validBytes) throws IOException {
+        log = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (validBytes < 4) {
+            log.truncate(0);
+            log.write(ByteBuffer.allocate(4).putInt(MAGIC).flip(), 0);
+            validBytes = 4;
+        } else {
+            // حذف رکورد نیمه‌کاره احتمالی در انتهای فایل (خروج ناگهانی برنامه)
+            log.truncate(validBytes);
+        }
+        log.position(validBytes);
+    }
+
+    /**
+     * خواندن یک فایل snapshot یا log با memory mapping
+     * @return طول بخش سالم فایل (رکوردهای خراب یا ناقص انتهایی نادیده گرفته می‌شوند)
+     */
+    private long load(Path path) throws IOException {
+        if (!Files.exists(path)) return 0;
+        boolean isLog = path.equals(logPath);
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < 4) return 0;
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("فایل پایگاه داده بزرگ‌تر از 2GB است: " + path);
+            }
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("فایل پایگاه داده نامعتبر است: " + path);
+            }
+
+            CRC32 crc = new CRC32();
+            while (buffer.remaining() >= 8) {
+                int start = buffer.position();
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (length <= 0 || length > buffer.remaining()) {
+                    buffer.position(start);
+                    break;
+                }
+
+                ByteBuffer payload = buffer.slice(buffer.position(), length);
+                crc.reset();
+                crc.update(payload.duplicate());
+                if ((int) crc.getValue() != checksum) {
+                    buffer.position(start);
+                    break;
+                }
+                buffer.position(buffer.position() + length);
+
+                apply(decode(payload));
+                if (isLog) logRecords++;
+            }
+            return buffer.position();
+        }
+    }
+
+    private static ByteBuffer encode(User user) {
+        byte[] username = bytesOf(user.getUsername());
+        byte[] gender = bytesOf(user.getGender());
+        byte[] lastname = bytesOf(user.getLastname());
+
+        int length = 1 + 8 + 12 + lengthOf(username) + lengthOf(gender) + lengthOf(lastname);
+        ByteBuffer buffer = ByteBuffer.allocate(8 + length);
+        buffer.position(8);
+        buffer.put((byte) (user.getChatId() != null ? 1 : 0));
+        buffer.putLong(user.getChatId() != null ? user.getChatId() : 0);
+        putBytes(buffer, username);
+        putBytes(buffer, gender);
+        putBytes(buffer, lastname);
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 8, length);
+        buffer.putInt(0, length);
+        buffer.putInt(4, (int) crc.getValue());
+        return buffer.flip();
+    }
+
+    private static User decode(ByteBuffer payload) {
+        boolean hasChatId = payload.get() == 1;
+        long chatId = payload.getLong();
+        User user = new User(getString(payload), getString(payload), getString(payload));
+        if (hasChatId) {
+            user.setChatId(chatId);
+        }
+        return user;
+    }
+
+    private static byte[] bytesOf(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int lengthOf(byte[] bytes) {
+        return bytes == null ? 0 : bytes.length;
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(bytes.length).put(bytes);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static User copyOf(User user) {
+        if (user == null) return null;
+        User copy = new User(user.getUsername(), user.getGender(), user.getLastname());
+        copy.setChatId(user.getChatId());
+        return copy;
+    }
+}
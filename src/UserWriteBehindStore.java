@@ -0,0 +1,136 @@
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ذخیره‌سازی تأخیری (write-behind) کاربران در فایل اکسل
+ * به جای خواندن و بازنویسی کل فایل برای هر /start، درخواست‌ها در حافظه جمع و ادغام می‌شوند
+ * و هر چند ثانیه یا با رسیدن به تعداد مشخص، همه با یک بار نوشتن اتمیک در فایل ثبت می‌شوند.
+ * همه نوشتن‌ها روی یک thread انجام می‌شوند.
+ */
+public class UserWriteBehindStore {
+
+    private static final Logger LOG = AsyncLogging.logger("users");
+
+    private static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 2000;
+    private static final int DEFAULT_MAX_BATCH_SIZE = 50;
+
+    private final String filePath;
+    private final int maxBatchSize;
+    private final ScheduledExecutorService flusher;
+
+    // کاربران در انتظار ثبت؛ کلید: username (کوچک‌شده) یا chat_id
+    private final Map<String, User> pending = new LinkedHashMap<>();
+
+    public UserWriteBehindStore(String filePath) {
+        this(filePath, DEFAULT_FLUSH_INTERVAL_MILLIS, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    /**
+     * @param filePath مسیر فایل اکسل
+     * @param flushIntervalMillis فاصله زمانی ثبت خودکار
+     * @param maxBatchSize تعداد کاربر در انتظاری که باعث ثبت فوری می‌شود
+     */
+    public UserWriteBehindStore(String filePath, long flushIntervalMillis, int maxBatchSize) {
+        this.filePath = filePath;
+        this.maxBatchSize = maxBatchSize;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "excel-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * اضافه کردن کاربر به صف ثبت
+     * اگر همین کاربر در صف باشد، فقط مقادیر خالی آن تکمیل می‌شوند (مثل upsertUserRow)
+     */
+    public void upsert(User user) {
+        String key = keyOf(user);
+        if (key == null) {
+            LOG.warn("⚠️ امکان ثبت کاربر بدون username یا chat_id وجود ندارد.");
+            return;
+        }
+
+        boolean full;
+        synchronized (pending) {
+            merge(key, user);
+            full = pending.size() >= maxBatchSize;
+        }
+        if (full) {
+            flusher.execute(this::flush);
+        }
+    }
+
+    /**
+     * ثبت همه کاربران در انتظار در فایل اکسل
+     * فقط از thread ثبت‌کننده یا هنگام بستن صدا زده می‌شود
+     */
+    private void flush() {
+        List<User> batch;
+        synchronized (pending) {
+            if (pending.isEmpty()) return;
+            batch = new ArrayList<>(pending.values());
+            pending.clear();
+        }
+
+        int written;
+        try {
+            written = ExcelReader.upsertUserRows(batch, filePath);
+        } catch (RuntimeException e) {
+            // خطای POI (مثلاً شیت خراب) نباید وظیفه زمان‌بندی‌شده را متوقف کند یا این کاربران را از بین ببرد
+            LOG.error("خطا در ثبت کاربران در فایل اکسل: {}", e.toString());
+            written = 0;
+        }
+        if (written == 0) {
+            // نوشتن ناموفق بود؛ کاربران برای تلاش بعدی به صف برمی‌گردند
+            synchronized (pending) {
+                for (User user : batch) {
+                    merge(keyOf(user), user);
+                }
+            }
+        }
+    }
+
+    /**
+     * ثبت کاربران باقی‌مانده و توقف thread ثبت‌کننده (هنگام خروج برنامه)
+     */
+    public void close() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    private void merge(String key, User user) {
+        User existing = pending.get(key);
+        if (existing == null) {
+            User copy = new User(user.getUsername(), user.getGender(), user.getLastname());
+            copy.setChatId(user.getChatId());
+            pending.put(key, copy);
+            return;
+        }
+        if (existing.getUsername() == null) existing.setUsername(user.getUsername());
+        if (existing.getGender() == null) existing.setGender(user.getGender());
+        if (existing.getLastname() == null) existing.setLastname(user.getLastname());
+        if (existing.getChatId() == null) existing.setChatId(user.getChatId());
+    }
+
+    private static String keyOf(User user) {
+        if (user.getUsername() != null && !user.getUsername().isBlank()) {
+            return "u:" + user.getUsername().trim().toLowerCase(Locale.ROOT);
+        }
+        return user.getChatId() == null ? null : "c:" + user.getChatId();
+    }
+}
@@ -0,0 +1,97 @@
+import org.apache.logging.log4j.Logger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * دریافت آپدیت‌ها با Webhook به جای Long Polling
+ * یک سرور HTTP داخلی درخواست‌های POST تلگرام را دریافت می‌کند، هدر X-Telegram-Bot-Api-Secret-Token را بررسی می‌کند
+ * و آپدیت را به همان پردازشی می‌دهد که polling استفاده می‌کند.
+ * درخواست بدون secret درست همیشه رد می‌شود (اگر secret تنظیم نشده باشد، همه درخواست‌ها رد می‌شوند).
+ *
+ * برای تست محلی (سرور فقط روی localhost) می‌توان بدون تنظیم آدرس عمومی، آپدیت را مستقیماً POST کرد:
+ * curl -H "X-Telegram-Bot-Api-Secret-Token: SECRET" -d '{"update_id":1,"message":{...}}' http://localhost:8443/telegram
+ */
+public class WebhookServer {
+
+    private static final Logger LOG = AsyncLogging.logger("webhook");
+
+    private static final String SECRET_HEADER = "X-Telegram-Bot-Api-Secret-Token";
+
+    private final HttpServer server;
+    private final byte[] secret;
+
+    /**
+     * @param address آدرس و پورت سرور (برای تست محلی فقط loopback)
+     * @param path مسیر دریافت آپدیت‌ها (مثلاً /telegram)
+     * @param secret مقدار مورد انتظار هدر secret token (خالی یعنی همه درخواست‌ها رد می‌شوند)
+     * @param handler پردازش‌کننده هر آپدیت
+     */
+    public WebhookServer(InetSocketAddress address, String path, String secret, Consumer<Update> handler) throws IOException {
+        this.secret = secret == null ? new byte[0] : secret.getBytes(StandardCharsets.UTF_8);
+        this.server = HttpServer.create(address, 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext(path, exchange -> handle(exchange, handler));
+    }
+
+    public void start() {
+        server.start();
+        LOG.info("🌐 سرور webhook روی {} شروع به کار کرد.", server.getAddress());
+    }
+
+    public void stop() {
+        server.stop(1);
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange, Consumer<Update> handler) throws IOException {
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            if (!secretMatches(exchange.getRequestHeaders().getFirst(SECRET_HEADER))) {
+                LOG.warn("⚠️ درخواست webhook با secret نامعتبر رد شد.");
+                exchange.sendResponseHeaders(401, -1);
+                return;
+            }
+
+            Update update;
+            try (InputStream in = exchange.getRequestBody()) {
+                update = UpdateDecoder.decodeUpdate(in);
+            } catch (Exception e) {
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+
+            try {
+                handler.accept(update);
+            } catch (Exception e) {
+                // پاسخ خطا باعث می‌شود تلگرام آپدیت را دوباره بفرستد
+                LOG.warn("⚠️ خطا در پردازش آپدیت webhook: {}", e.getMessage());
+                exchange.sendResponseHeaders(500, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(200, -1);
+        }
+    }
+
+    /**
+     * مقایسه secret در زمان ثابت
+     */
+    private boolean secretMatches(String received) {
+        if (secret.length == 0 || received == null) return false;
+        return MessageDigest.isEqual(secret, received.getBytes(StandardCharsets.UTF_8));
+    }
+}